@@ -0,0 +1,304 @@
+package ca.thoughtflow.concurrency;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Routes each count to the model expected to be fastest for the ranges at hand.
+ * The situation of a count is its workload, its number of cores and the power-of-two buckets of its range count and average range size.
+ * The first time a situation is seen, every model counts a truncated copy of the ranges (same count, at most PROBE_CANDIDATES candidates in all)
+ * and its cost per candidate goes into a decision table shared by the JVM and persisted to disk. Only one caller calibrates a situation at a
+ * time: the others route on the costs known so far.
+ * Each real count is then timed (setup and count of the chosen model only) and blended into the real cost of that model, so the routing
+ * follows real timings rather than the probes. Once every EXPLORATION_INTERVAL counts, the count goes to the runner-up so that its real cost
+ * is measured too and a best model whose real timings degrade loses its place. Every REPROBE_INTERVAL counts of a situation, one more model
+ * is probed again in turn on a background thread, so a model that lost on its first probe gets another chance.
+ *
+ * @author Nick Maiorano
+ */
+public class AdaptivePrimeCounter implements PrimeCounter {
+
+	/**
+	 * Default decision table file, in the temporary directory.
+	 */
+	public static final Path DEFAULT_DECISION_TABLE = Paths.get(System.getProperty("java.io.tmpdir"), "primecounter-decisions.properties");
+
+	/**
+	 * Maximum number of candidates counted by each calibration probe.
+	 */
+	public static final long PROBE_CANDIDATES = 1 << 18;
+
+	/**
+	 * Number of counts of a situation between two probes of one of its models.
+	 */
+	public static final int REPROBE_INTERVAL = 16;
+
+	/**
+	 * Number of counts of a situation between two counts routed to the runner-up rather than the best model.
+	 */
+	public static final int EXPLORATION_INTERVAL = 8;
+
+	private static final Map<String, Supplier<PrimeCounter>> MODELS = new LinkedHashMap<>();
+
+	static {
+		MODELS.put(SingleThreadedPrimeCounter.class.getSimpleName(), SingleThreadedPrimeCounter::new);
+		MODELS.put(MultiThreadedPrimeCounter.class.getSimpleName(), MultiThreadedPrimeCounter::new);
+		MODELS.put(CountDownLatchPrimeCounter.class.getSimpleName(), CountDownLatchPrimeCounter::new);
+		MODELS.put(CachedThreadPoolPrimeCounter.class.getSimpleName(), CachedThreadPoolPrimeCounter::new);
+		MODELS.put(ForkJoinPrimeCounter.class.getSimpleName(), ForkJoinPrimeCounter::new);
+		MODELS.put(PromisePrimeCounter.class.getSimpleName(), PromisePrimeCounter::new);
+		MODELS.put(TreePromisePrimeCounter.class.getSimpleName(), TreePromisePrimeCounter::new);
+		MODELS.put(SpliteratorPrimeCounter.class.getSimpleName(), SpliteratorPrimeCounter::new);
+		MODELS.put(ParallelStreamPrimeCounter.class.getSimpleName(), ParallelStreamPrimeCounter::new);
+		MODELS.put(ReactiveStreamPrimeFinder.class.getSimpleName(), ReactiveStreamPrimeFinder::new);
+	}
+
+	private static final ExecutorService REPROBER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "adaptive-reprober");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private ExecutorService suppliedExecutor;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+	private Path decisionTableFile = DEFAULT_DECISION_TABLE;
+	private DecisionTable decisionTable;
+	private String situation;
+	private String model;
+	private PrimeCounter delegate;
+	private long candidates;
+	private long setupNanos;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
+
+	/**
+	 * Sets the file the decision table is loaded from and saved to. Must be called before setup.
+	 *
+	 * @param decisionTableFile The decision table file.
+	 */
+	public void setDecisionTable(Path decisionTableFile) {
+		this.decisionTableFile = decisionTableFile;
+	}
+
+	@Override
+	public void setup(List<LongRange> ranges) {
+		decisionTable = DecisionTable.open(decisionTableFile);
+		candidates = getCandidates(ranges);
+		situation = getSituation(ranges);
+
+		List<String> models = getEligibleModels();
+		List<String> unprobedModels = models.stream().filter(nextModel -> decisionTable.getProbeCost(situation, nextModel) == null).collect(Collectors.toList());
+		long countsOfSituation = decisionTable.incrementCount(situation);
+		DecisionTable calibratedTable = decisionTable;
+		String calibratedSituation = situation;
+
+		// One caller calibrates a situation at a time. The others route on the costs known so far, or to the single threaded model if none is.
+		if (!unprobedModels.isEmpty()) {
+			if (calibratedTable.startCalibration(calibratedSituation)) {
+				try {
+					calibrate(calibratedTable, calibratedSituation, unprobedModels, getProbeRanges(ranges));
+				}
+				finally {
+					calibratedTable.endCalibration(calibratedSituation);
+				}
+			}
+		}
+		else if (countsOfSituation % REPROBE_INTERVAL == 0 && calibratedTable.startCalibration(calibratedSituation)) {
+			// Re-probes run in the background so that they don't add to the latency of the count that triggers them.
+			List<String> reprobedModels = List.of(models.get((int) (countsOfSituation / REPROBE_INTERVAL % models.size())));
+			List<LongRange> probeRanges = getProbeRanges(ranges);
+			try {
+				REPROBER.execute(() -> {
+					try {
+						calibrate(calibratedTable, calibratedSituation, reprobedModels, probeRanges);
+					}
+					finally {
+						calibratedTable.endCalibration(calibratedSituation);
+					}
+				});
+			}
+			catch (RuntimeException e) {
+				calibratedTable.endCalibration(calibratedSituation);
+				throw e;
+			}
+		}
+
+		List<String> rankedModels = models.stream().filter(nextModel -> decisionTable.getCost(situation, nextModel, models) != null).
+				sorted((l, r) -> Double.compare(decisionTable.getCost(situation, l, models), decisionTable.getCost(situation, r, models))).
+				collect(Collectors.toList());
+
+		// Now and then the runner-up gets a real count so that real timings, not only probes, can overturn the routing.
+		if (rankedModels.isEmpty()) {
+			model = SingleThreadedPrimeCounter.class.getSimpleName();
+		}
+		else if (rankedModels.size() > 1 && countsOfSituation % EXPLORATION_INTERVAL == EXPLORATION_INTERVAL / 2) {
+			model = rankedModels.get(1);
+		}
+		else {
+			model = rankedModels.get(0);
+		}
+		delegate = createModel(model);
+
+		// Only the chosen model is timed: calibration is not part of its cost.
+		long startTime = System.nanoTime();
+		delegate.setup(ranges);
+		setupNanos = System.nanoTime() - startTime;
+	}
+
+	@Override
+	public long countPrimes() throws CountingException {
+		long startTime = System.nanoTime();
+		long count = delegate.countPrimes();
+
+		// Some models start counting in setup, so the delegate's setup is part of the timing.
+		if (candidates > 0) {
+			decisionTable.refineCost(situation, model, (double) (setupNanos + System.nanoTime() - startTime) / candidates);
+		}
+
+		return count;
+	}
+
+	@Override
+	public void tearDown() {
+		delegate.tearDown();
+		decisionTable.save();
+	}
+
+	/**
+	 * Returns the situation of the last count, the model it was routed to and the cost of every model in that situation.
+	 *
+	 * @return The summary.
+	 */
+	public String getRoutingSummary() {
+		return String.format("Decision table: %s. Situation: %s. Routed to: %s. Costs (ns per candidate): %s", decisionTable, situation, model,
+				getEligibleModels().stream().map(nextModel -> nextModel + "=" + String.format("%.2f", decisionTable.getCost(situation, nextModel, getEligibleModels()))).collect(Collectors.joining(", ")));
+	}
+
+	private static long getCandidates(List<LongRange> ranges) {
+		return ranges.stream().mapToLong(nextRange -> Math.max(nextRange.getEnd() - nextRange.getStart(), 0)).sum();
+	}
+
+	private static int getBucket(long value) {
+		return 63 - Long.numberOfLeadingZeros(Math.max(value, 1));
+	}
+
+	private int getCores() {
+		int cores;
+
+		if (suppliedExecutor instanceof ForkJoinPool) {
+			cores = ((ForkJoinPool) suppliedExecutor).getParallelism();
+		}
+		else if (parallelism != MODEL_DEFAULT_PARALLELISM) {
+			cores = parallelism;
+		}
+		else {
+			cores = Runtime.getRuntime().availableProcessors();
+		}
+
+		return cores;
+	}
+
+	private String getSituation(List<LongRange> ranges) {
+		long averageSize = ranges.isEmpty() ? 0 : candidates / ranges.size();
+		return workload + ".cores" + getCores() + ".ranges2^" + getBucket(ranges.size()) + ".size2^" + getBucket(averageSize);
+	}
+
+	private List<String> getEligibleModels() {
+		// Fork/join models only run on a ForkJoinPool.
+		return MODELS.keySet().stream().filter(nextModel -> suppliedExecutor == null || suppliedExecutor instanceof ForkJoinPool ||
+				!(nextModel.equals(ForkJoinPrimeCounter.class.getSimpleName()) || nextModel.equals(ParallelStreamPrimeCounter.class.getSimpleName()))).
+				collect(Collectors.toList());
+	}
+
+	private PrimeCounter createModel(String modelName) {
+		PrimeCounter counter = MODELS.get(modelName).get();
+
+		if (parallelism != MODEL_DEFAULT_PARALLELISM) {
+			counter.setParallelism(parallelism);
+		}
+		if (suppliedExecutor != null) {
+			counter.setExecutor(suppliedExecutor);
+		}
+		if (workload != Workload.PRIMES) {
+			counter.setWorkload(workload);
+		}
+
+		return counter;
+	}
+
+	private List<LongRange> getProbeRanges(List<LongRange> ranges) {
+		// Keep the range count (it drives the scheduling overhead) but shrink each range so a probe stays short.
+		double scale = Math.min(1, (double) PROBE_CANDIDATES / Math.max(candidates, 1));
+
+		return ranges.stream().map(nextRange ->
+			LongRange.create(nextRange.getStart(), nextRange.getStart() + Math.max((long) ((nextRange.getEnd() - nextRange.getStart()) * scale), 1))).
+			collect(Collectors.toList());
+	}
+
+	private void calibrate(DecisionTable table, String calibratedSituation, List<String> models, List<LongRange> probeRanges) {
+		long probeCandidates = Math.max(getCandidates(probeRanges), 1);
+
+		// Probes run on a pool of their own, sized like the supplied executor, since the supplied one may be shut down before a re-probe runs.
+		ExecutorService probeExecutor = suppliedExecutor instanceof ForkJoinPool ? new ForkJoinPool(getCores()) :
+			suppliedExecutor != null ? Executors.newFixedThreadPool(getCores()) : null;
+
+		try {
+			models.stream().forEach(nextModel -> {
+				try {
+					// The first probe warms up the model. Only the second is kept.
+					probe(nextModel, probeRanges, probeExecutor);
+					table.setProbeCost(calibratedSituation, nextModel, (double) probe(nextModel, probeRanges, probeExecutor) / probeCandidates);
+				}
+				catch (RuntimeException e) {
+					System.err.println("Could not calibrate " + nextModel + ": " + e);
+				}
+			});
+		}
+		finally {
+			if (probeExecutor != null) {
+				probeExecutor.shutdownNow();
+			}
+		}
+		table.save();
+	}
+
+	private long probe(String modelName, List<LongRange> probeRanges, ExecutorService probeExecutor) {
+		PrimeCounter counter = createModel(modelName);
+		if (probeExecutor != null) {
+			counter.setExecutor(probeExecutor);
+		}
+		long startTime = System.nanoTime();
+
+		try {
+			counter.setup(probeRanges);
+			counter.countPrimes();
+		}
+		finally {
+			counter.tearDown();
+		}
+
+		return System.nanoTime() - startTime;
+	}
+}
@@ -0,0 +1,99 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.stream.IntStream;
+
+/**
+ * Table of base primes shared by concurrent callers. Candidates are trial-divided by primes only instead of by every integer.
+ * The table grows on demand (doubling its limit) to cover the square root of the largest candidate seen so far, up to MAX_LIMIT.
+ *
+ * @author Nick Maiorano
+ */
+public class BasePrimeTable {
+
+	/**
+	 * Largest limit the table grows to (a 32 MB sieve).
+	 */
+	public static final int MAX_LIMIT = 1 << 25;
+
+	/**
+	 * Largest candidate the table can test.
+	 */
+	public static final long MAX_CANDIDATE = (long) (MAX_LIMIT - 1) * (MAX_LIMIT - 1);
+
+	private volatile int[] primes = new int[0];
+	private volatile long limit = 1;
+
+	/**
+	 * Determines if the given number is prime by dividing it by the base primes.
+	 *
+	 * @param primeCandidate The number to test.
+	 * @return True if number is prime - false otherwise.
+	 */
+	public boolean isPrime(long primeCandidate) {
+		boolean isPrime = primeCandidate >= 2;
+
+		if (isPrime) {
+			for (int nextPrime : ensureCapacity(primeCandidate)) {
+				if ((long) nextPrime * nextPrime > primeCandidate) {
+					break;
+				}
+				if (primeCandidate % nextPrime == 0) {
+					isPrime = false;
+					break;
+				}
+			}
+		}
+
+		return isPrime;
+	}
+
+	/**
+	 * Grows the table, if needed, so that it can test candidates up to the given value.
+	 *
+	 * @param maxCandidate The largest candidate to test.
+	 * @return The primes up to at least the square root of the candidate.
+	 * @throws IllegalArgumentException Thrown if the candidate is above MAX_CANDIDATE.
+	 */
+	public int[] ensureCapacity(long maxCandidate) throws IllegalArgumentException {
+		if (maxCandidate > MAX_CANDIDATE) {
+			throw new IllegalArgumentException("Candidate " + maxCandidate + " is above the supported maximum of " + MAX_CANDIDATE);
+		}
+
+		long root = (long) Math.sqrt(maxCandidate) + 1;
+
+		if (limit < root) {
+			synchronized (this) {
+				if (limit < root) {
+					int newLimit = (int) Math.min(Math.max(root, limit * 2), MAX_LIMIT);
+					primes = sieve(newLimit);
+					limit = newLimit;
+				}
+			}
+		}
+
+		return primes;
+	}
+
+	/**
+	 * Returns the number of base primes currently held.
+	 *
+	 * @return The size of the table.
+	 */
+	public int size() {
+		return primes.length;
+	}
+
+	private static int[] sieve(int limit) {
+		boolean[] composite = new boolean[limit + 1];
+
+		for (int candidate = 2; (long) candidate * candidate <= limit; ++candidate) {
+			if (!composite[candidate]) {
+				for (int multiple = candidate * candidate; multiple <= limit; multiple += candidate) {
+					composite[multiple] = true;
+				}
+			}
+		}
+
+		return IntStream.rangeClosed(2, limit).filter(next -> !composite[next]).toArray();
+	}
+}
@@ -0,0 +1,242 @@
+package ca.thoughtflow.concurrency;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Saves the timing distributions of a benchmark run to a baseline file and compares later runs against it.
+ * A counter has regressed when the one-sided Mann-Whitney U test finds it slower than the baseline at the 5% level
+ * and the Hodges-Lehmann estimate of the slowdown exceeds the threshold.
+ * A counter of the baseline that is missing from the current run (e.g. because it failed) has also regressed.
+ *
+ * @author Nick Maiorano
+ */
+public class BaselineComparison {
+
+	/**
+	 * Default slowdown, in percent of the baseline median, above which a significant difference is a regression.
+	 */
+	public static final String DEFAULT_THRESHOLD_PERCENT = "5";
+
+	/**
+	 * Fewest rounds on each side for which the test can reach the 5% level. Small samples use the exact distribution of U, whose smallest
+	 * one-sided p-value with 3 rounds on each side is 1/20.
+	 */
+	public static final int MIN_ROUNDS = 4;
+
+	/**
+	 * Most rounds on a side for which the exact distribution of U is used. Larger samples, and samples with ties, use the normal approximation.
+	 */
+	public static final int EXACT_MAX_ROUNDS = 50;
+
+	private static final double SIGNIFICANCE_LEVEL = 0.05;
+	private static final double CONFIDENCE_Z = 1.959964;
+
+	private BaselineComparison() {
+	}
+
+	/**
+	 * Saves the durations of each counter to the baseline file.
+	 *
+	 * @param file The baseline file.
+	 * @param durations The durations in nanoseconds keyed by counter class.
+	 * @throws UncheckedIOException Thrown if the file could not be written.
+	 */
+	public static void save(Path file, Map<String, List<Long>> durations) throws UncheckedIOException {
+		Properties properties = new Properties();
+		durations.forEach((k, v) -> properties.setProperty(k, v.stream().map(String::valueOf).collect(Collectors.joining(","))));
+
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			properties.store(writer, "Benchmark baseline - durations in nanoseconds");
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not save baseline " + file, e);
+		}
+	}
+
+	/**
+	 * Loads the durations of each counter from the baseline file.
+	 *
+	 * @param file The baseline file.
+	 * @return The durations in nanoseconds keyed by counter class.
+	 * @throws UncheckedIOException Thrown if the file could not be read.
+	 */
+	public static Map<String, List<Long>> load(Path file) throws UncheckedIOException {
+		Properties properties = new Properties();
+
+		try (Reader reader = Files.newBufferedReader(file)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load baseline " + file, e);
+		}
+
+		Map<String, List<Long>> durations = new HashMap<>();
+		properties.stringPropertyNames().forEach(next -> durations.put(next,
+				Arrays.stream(properties.getProperty(next).split(",")).map(Long::valueOf).collect(Collectors.toList())));
+
+		return durations;
+	}
+
+	/**
+	 * Compares the current durations against the baseline and prints one line per counter.
+	 *
+	 * @param baseline The baseline durations keyed by counter class.
+	 * @param current The current durations keyed by counter class. Counters that failed are left out.
+	 * @param thresholdPercent The slowdown in percent above which a significant difference is a regression.
+	 * @return True if any counter regressed - false otherwise.
+	 */
+	public static boolean compare(Map<String, List<Long>> baseline, Map<String, List<Long>> current, double thresholdPercent) {
+		boolean regressed = false;
+
+		System.out.println("=========");
+		System.out.println("Baseline comparison (threshold " + thresholdPercent + "%):");
+
+		TreeSet<String> counterClasses = new TreeSet<>(current.keySet());
+		counterClasses.addAll(baseline.keySet());
+
+		for (String counterClass : counterClasses) {
+			if (!current.containsKey(counterClass) || current.get(counterClass).isEmpty()) {
+				System.out.println(counterClass + " missing from or failed in this run REGRESSION");
+				regressed = true;
+			}
+			else if (baseline.get(counterClass) != null && (baseline.get(counterClass).size() < MIN_ROUNDS || current.get(counterClass).size() < MIN_ROUNDS)) {
+				System.out.println(counterClass + " inconclusive: " + baseline.get(counterClass).size() + " baseline and " + current.get(counterClass).size() +
+						" current rounds but " + MIN_ROUNDS + " of each are needed to detect a regression");
+			}
+			else if (baseline.containsKey(counterClass)) {
+				Comparison comparison = new Comparison(toArray(baseline.get(counterClass)), toArray(current.get(counterClass)));
+				boolean counterRegressed = comparison.getPValue() < SIGNIFICANCE_LEVEL && comparison.getShiftPercent() > thresholdPercent;
+
+				System.out.println(counterClass + " " + comparison + (counterRegressed ? " REGRESSION" : ""));
+				regressed |= counterRegressed;
+			}
+			else {
+				System.out.println(counterClass + " not in baseline");
+			}
+		}
+
+		return regressed;
+	}
+
+	private static long[] toArray(List<Long> durations) {
+		return durations.stream().mapToLong(l -> l).toArray();
+	}
+
+	/**
+	 * Standard normal cumulative distribution function (Abramowitz and Stegun 7.1.26, absolute error below 1.5e-7).
+	 */
+	private static double normalCdf(double z) {
+		double x = Math.abs(z) / Math.sqrt(2);
+		double t = 1 / (1 + 0.3275911 * x);
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+
+		return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+	}
+
+	private static class Comparison {
+
+		private final double pValue;
+		private final double baselineMedian;
+		private final double shift;
+		private final double shiftLow;
+		private final double shiftHigh;
+
+		public Comparison(long[] baseline, long[] current) {
+			int n = baseline.length;
+			int m = current.length;
+
+			// Mann-Whitney U of the current sample, with its exact distribution for small samples without ties and the normal approximation,
+			// with tie and continuity corrections, otherwise.
+			double u = 0;
+			for (long nextCurrent : current) {
+				for (long nextBaseline : baseline) {
+					u += nextCurrent > nextBaseline ? 1 : nextCurrent == nextBaseline ? 0.5 : 0;
+				}
+			}
+
+			long[] all = LongStream.concat(Arrays.stream(baseline), Arrays.stream(current)).sorted().toArray();
+			double tieCorrection = 0;
+			for (int start = 0, end; start < all.length; start = end) {
+				for (end = start; end < all.length && all[end] == all[start]; ++end);
+				double ties = end - start;
+				tieCorrection += ties * ties * ties - ties;
+			}
+
+			double variance = n * m / 12d * ((n + m + 1) - tieCorrection / ((n + m) * (n + m - 1d)));
+			if (tieCorrection == 0 && n <= EXACT_MAX_ROUNDS && m <= EXACT_MAX_ROUNDS) {
+				pValue = exactPValue(n, m, (int) u);
+			}
+			else {
+				pValue = variance > 0 ? 1 - normalCdf((u - n * m / 2d - 0.5) / Math.sqrt(variance)) : 1;
+			}
+
+			// Hodges-Lehmann shift with its distribution-free confidence interval from the ordered pairwise differences.
+			long[] differences = Arrays.stream(current).flatMap(c -> Arrays.stream(baseline).map(b -> c - b)).sorted().toArray();
+			int lowIndex = (int) Math.max(0, Math.floor(n * m / 2d - CONFIDENCE_Z * Math.sqrt(n * m * (n + m + 1) / 12d)));
+
+			baselineMedian = median(Arrays.stream(baseline).sorted().toArray());
+			shift = median(differences);
+			shiftLow = differences[Math.min(lowIndex, differences.length - 1)];
+			shiftHigh = differences[Math.max(differences.length - 1 - lowIndex, 0)];
+		}
+
+		/**
+		 * Exact probability that U is at least u when both samples come from the same distribution and have no ties.
+		 * Counts the orderings of n baseline and m current values by their U: the largest value is either current, adding n to U, or baseline.
+		 */
+		private static double exactPValue(int n, int m, int u) {
+			// orderings[i][k]: number of orderings of i baseline and j current values with U = k, for the current j.
+			double[][] orderings = new double[n + 1][n * m + 1];
+			for (int i = 0; i <= n; ++i) {
+				orderings[i][0] = 1;
+			}
+
+			for (int j = 1; j <= m; ++j) {
+				double[][] next = new double[n + 1][n * m + 1];
+				for (int i = 0; i <= n; ++i) {
+					for (int k = 0; k <= n * m; ++k) {
+						next[i][k] = (i > 0 ? next[i - 1][k] : 0) + (k >= i ? orderings[i][k - i] : 0);
+					}
+				}
+				orderings = next;
+			}
+
+			double total = Arrays.stream(orderings[n]).sum();
+			double tail = Arrays.stream(orderings[n], Math.min(u, n * m), n * m + 1).sum();
+
+			return tail / total;
+		}
+
+		private static double median(long[] sorted) {
+			return (sorted[(sorted.length - 1) / 2] + sorted[sorted.length / 2]) / 2d;
+		}
+
+		private double toPercent(double value) {
+			return value / baselineMedian * 100;
+		}
+
+		public double getPValue() {
+			return pValue;
+		}
+
+		public double getShiftPercent() {
+			return toPercent(shift);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("change: %+.1f%% (95%% CI %+.1f%% to %+.1f%%). p-value: %.4f", toPercent(shift), toPercent(shiftLow), toPercent(shiftHigh), pValue);
+		}
+	}
+}
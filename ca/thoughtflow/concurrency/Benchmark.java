@@ -1,14 +1,24 @@
 package ca.thoughtflow.concurrency;
 
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import ca.thoughtflow.concurrency.ResourceMeter.ResourceUsage;
+
 /**
  * Main class used to benchmark the different concurrency models. Using average of multiple runs.
  *  
@@ -16,7 +26,8 @@ import java.util.stream.IntStream;
  */
 public class Benchmark {
 
-	private static final String USAGE = "Usage: numberOfRanges range iterations primeCounterClassNames...";
+	private static final String USAGE = "Usage: [--workload primes|twin-primes|synthetic:cost,...] [--sweep maxThreads | --load closed:callers:seconds|open:callsPerSecond:seconds] [--executor-threads threads] [--journal file] [--journal-flush millis] [--decision-table file] [--save-baseline file] [--compare-baseline file [--regression-threshold percent]] [--warmup-rounds rounds] " +
+			"numberOfRanges range iterations primeCounterClassNames...";
 	
 	private static List<String> getClassesNotFound(List<String> classes) {
 		
@@ -32,8 +43,11 @@ public class Benchmark {
 		}).filter(next -> next != null).collect(Collectors.toList());	
 	}
 	
+	/**
+	 * Creates the prime counters and sets their workload. Counters that cannot be created or cannot apply the workload are left out.
+	 */
 	@SuppressWarnings("unchecked")
-	private static List<PrimeCounter> getPrimeCounters(List<String> classes) {
+	static List<PrimeCounter> getPrimeCounters(List<String> classes, Workload workload) {
 		
 		List<PrimeCounter> primeCounters = classes.stream().map(next -> {
 			Class<PrimeCounter> primeFinder;
@@ -47,16 +61,22 @@ public class Benchmark {
 			PrimeCounter primeCounter;
 			try {
 				primeCounter = clazz.getDeclaredConstructor().newInstance();
+				if (workload != Workload.PRIMES) {
+					primeCounter.setWorkload(workload);
+				}
 			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
 				primeCounter = null;
+			} catch (UnsupportedOperationException e) {
+				System.err.println("Skipping " + clazz.getName() + " for workload " + workload + ": " + e.getMessage());
+				primeCounter = null;
 			}
 			return primeCounter;
-		}).collect(Collectors.toList());
+		}).filter(next -> next != null).collect(Collectors.toList());
 		
 		return primeCounters;
 	}
 	
-	private static List<LongRange> getRanges(int numberOfRanges, long range) {
+	static List<LongRange> getRanges(int numberOfRanges, long range) {
 		
 		List<Float> sizes = Arrays.asList(.5f, 1f, 1.5f);
 		List<LongRange> ranges = new LinkedList<>();
@@ -74,21 +94,35 @@ public class Benchmark {
 		return ranges;
 	}
 	
-	private static Result timeExecution(PrimeCounter counter, List<LongRange> ranges) {
+	private static long getCandidateCount(List<LongRange> ranges) {
+		return ranges.stream().mapToLong(nextRange -> nextRange.getEnd() - nextRange.getStart()).sum();
+	}
+	
+	static Result timeExecution(PrimeCounter counter, List<LongRange> ranges) {
 		
 		Result result;
 		
-		counter.setup(ranges);
-		long startTime = System.currentTimeMillis();
+		// Resources cover setup and count, since some models do their work in setup. The duration covers the count only.
+		ResourceMeter meter = ResourceMeter.start();
+
+		try {
+			counter.setup(ranges);
+		}
+		catch (RuntimeException exception) {
+			meter.stop();
+			throw exception;
+		}
+		long startTime = System.nanoTime();
 
 		try {
 			long count = counter.countPrimes();
 		
-			long endTime = System.currentTimeMillis() - startTime;
+			long endTime = System.nanoTime() - startTime;
 		
-			result = new Result(counter.getClass().getName(), endTime, count);
+			result = new Result(counter.getClass().getName(), endTime, count, meter.stop(), getCandidateCount(ranges));
 		}
 		catch (CountingException exception) {
+			meter.stop();
 			result = new Result(counter.getClass().getName(), exception);
 		}
 		finally {
@@ -98,14 +132,70 @@ public class Benchmark {
 		return result;
 	}
 
-	private static void executeTest(int rounds, List<String> primeCounterClassNames, List<LongRange> ranges) {
+	private static Result timeExecutionOnPool(PrimeCounter counter, List<LongRange> ranges, int executorThreads) {
+		
+		Result result;
+		
+		if (executorThreads > 0) {
+			// Each counter gets a pool of its own so that models don't disturb each other.
+			ForkJoinPool executor = new ForkJoinPool(executorThreads);
+			try {
+				counter.setExecutor(executor);
+				result = timeExecution(counter, ranges);
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		else {
+			result = timeExecution(counter, ranges);
+		}
+		
+		return result;
+	}
+
+	private static void configureJournal(List<PrimeCounter> counters, Map<String, String> options, Workload workload) {
+		counters.stream().filter(next -> next instanceof CheckpointedPrimeCounter).map(next -> (CheckpointedPrimeCounter) next).forEach(next -> {
+			// A journal holds one workload: the default workload keeps the given file and the others get a file of their own next to it.
+			if (options.containsKey("--journal")) {
+				next.setJournal(Paths.get(options.get("--journal") + (workload == Workload.PRIMES ? "" : "." + workload.toString().replaceAll("[^A-Za-z0-9-]", "_"))));
+			}
+			next.setFlushInterval(Long.parseLong(options.getOrDefault("--journal-flush", String.valueOf(CheckpointedPrimeCounter.DEFAULT_FLUSH_INTERVAL_MILLIS))));
+		});
+	}
+
+	private static void configureAdaptive(List<PrimeCounter> counters, Map<String, String> options) {
+		counters.stream().filter(next -> next instanceof AdaptivePrimeCounter && options.containsKey("--decision-table")).
+			forEach(next -> ((AdaptivePrimeCounter) next).setDecisionTable(Paths.get(options.get("--decision-table"))));
+	}
+
+	private static Map<String, List<Long>> executeTest(int rounds, List<String> primeCounterClassNames, List<LongRange> ranges, int executorThreads, Workload workload,
+			Map<String, String> options) {
 		
 		final Map<String, Double> averages = new HashMap<>();
+		final Map<String, Double> cpuEfficiencies = new HashMap<>();
+		final Map<String, List<Long>> durations = new HashMap<>();
+		final Map<String, Integer> timedRounds = new HashMap<>();
+		final Set<String> failedCounters = new HashSet<>();
+		int warmupRounds = Integer.parseInt(options.getOrDefault("--warmup-rounds",
+				options.containsKey("--save-baseline") || options.containsKey("--compare-baseline") ? "1" : "0"));
+		
+		// Warm-up rounds are discarded: the first round runs before the JIT has compiled the counting loops. They use temporary journals.
+		IntStream.range(0, warmupRounds).forEach(iter -> {
+			System.out.println("Warm-up round " + (iter + 1) + " of " + warmupRounds);
+			List<PrimeCounter> counters = getPrimeCounters(primeCounterClassNames, workload);
+			configureAdaptive(counters, options);
+			counters.stream().forEach(next -> timeExecutionOnPool(next, ranges, executorThreads));
+		});
 		
 		IntStream.range(0, rounds).forEach(iter -> {
-		   List<PrimeCounter> counters = getPrimeCounters(primeCounterClassNames);
-		   List<Result> results = counters.stream().map(next -> timeExecution(next, ranges)).peek(System.out::println).collect(Collectors.toList());
-		   boolean allIdentical = results.stream().reduce(results.get(0), (l, r) -> l != null && l.getCount() == r.getCount() ? l : null) != null;
+		   List<PrimeCounter> counters = getPrimeCounters(primeCounterClassNames, workload);
+		   configureJournal(counters, options, workload);
+		   configureAdaptive(counters, options);
+		   List<Result> results = counters.stream().map(next -> timeExecutionOnPool(next, ranges, executorThreads)).peek(System.out::println).collect(Collectors.toList());
+		   counters.stream().filter(next -> next instanceof CheckpointedPrimeCounter).forEach(next -> System.out.println(((CheckpointedPrimeCounter) next).getJournalSummary()));
+		   counters.stream().filter(next -> next instanceof AdaptivePrimeCounter).forEach(next -> System.out.println(((AdaptivePrimeCounter) next).getRoutingSummary()));
+		   boolean allIdentical = results.isEmpty() || results.stream().reduce(results.get(0), (l, r) -> l != null && l.getCount() == r.getCount() ? l : null) != null;
 
 		   if (!allIdentical) {
 			   System.err.println("Error: Not all prime counters generated the same value");
@@ -117,27 +207,56 @@ public class Benchmark {
 			   countingErrorResults.stream().forEach(r -> {System.err.println(r.getClass()); r.getException().printStackTrace();});
 		   }
 		   
-		   results.stream().filter(r -> r.getException() == null).forEach(next -> averages.merge(next.getCounterClass(), (double) next.getDuration(), (v1, v2) -> v1 + v2));
+		   // Ranges resumed from a journal are not counted, so a round that resumed any of them is not timed.
+		   Set<String> resumedCounters = counters.stream().filter(next -> next instanceof CheckpointedPrimeCounter && ((CheckpointedPrimeCounter) next).getResumedRanges() > 0).
+				   map(next -> next.getClass().getName()).collect(Collectors.toSet());
+		   resumedCounters.stream().forEach(next -> System.out.println("Not timed (resumed from the journal): " + next));
+		   
+		   List<Result> timedResults = results.stream().filter(r -> r.getException() == null && !resumedCounters.contains(r.getCounterClass())).collect(Collectors.toList());
+		   results.stream().filter(r -> r.getException() != null).forEach(next -> failedCounters.add(next.getCounterClass()));
+		   timedResults.stream().forEach(next -> timedRounds.merge(next.getCounterClass(), 1, (v1, v2) -> v1 + v2));
+		   timedResults.stream().forEach(next -> averages.merge(next.getCounterClass(), (double) next.getDuration(), (v1, v2) -> v1 + v2));
+		   timedResults.stream().forEach(next -> cpuEfficiencies.merge(next.getCounterClass(), next.getCpuSecondsPerMillionCandidates(), (v1, v2) -> v1 + v2));
+		   timedResults.stream().forEach(next -> durations.computeIfAbsent(next.getCounterClass(), k -> new LinkedList<>()).add(next.getDurationNanos()));
 		});
 		
-		averages.replaceAll((k, v) -> Math.round(v / rounds * 10) / 10d);
+		averages.replaceAll((k, v) -> Math.round(v / timedRounds.get(k) * 10) / 10d);
 		
 		System.out.println("=========");
 		System.out.println("Averages:");
 		averages.forEach((k, v) -> System.out.println(k + " " + v));
+		
+		cpuEfficiencies.replaceAll((k, v) -> Math.round(v / timedRounds.get(k) * 1000) / 1000d);
+		
+		System.out.println("=========");
+		System.out.println("CPU-seconds per million candidates:");
+		cpuEfficiencies.forEach((k, v) -> System.out.println(k + " " + v));
+		
+		// A counter that failed in any round has no trustworthy distribution: it is left out, which fails a baseline comparison.
+		durations.keySet().removeAll(failedCounters);
+		
+		return durations;
 	}
 	
 	public static void main(String[] args) {
 
-		if (args.length > 3) {
+		// Options come first and each one takes a single value.
+		Map<String, String> options = new HashMap<>();
+		int firstArgument = 0;
+		while (firstArgument + 1 < args.length && args[firstArgument].startsWith("--")) {
+			options.put(args[firstArgument], args[firstArgument + 1]);
+			firstArgument += 2;
+		}
+		
+		if (args.length - firstArgument > 3) {
 			try {
-				int numberOfRanges = Integer.parseInt(args[0]);
-				long range = Long.parseLong(args[1]);
-				int rounds = Integer.parseInt(args[2]);
+				int numberOfRanges = Integer.parseInt(args[firstArgument]);
+				long range = Long.parseLong(args[firstArgument + 1]);
+				int rounds = Integer.parseInt(args[firstArgument + 2]);
 
 
 				List<String> primeCounterClassNames = new LinkedList<>();
-				for (int index = 3; index < args.length; ++index) {
+				for (int index = firstArgument + 3; index < args.length; ++index) {
 					primeCounterClassNames.add(args[index]);
 				}
 
@@ -148,8 +267,61 @@ public class Benchmark {
 					System.out.println("Number of ranges: " + numberOfRanges);
 					System.out.println("Average range size: " + (int) range / numberOfRanges);
 					System.out.println("Rounds: " + rounds);
+					
+					if ((options.containsKey("--save-baseline") || options.containsKey("--compare-baseline")) && rounds < BaselineComparison.MIN_ROUNDS) {
+						System.err.println("Warning: at least " + BaselineComparison.MIN_ROUNDS + " rounds are needed for a baseline comparison to detect a regression");
+					}
 
-					executeTest(rounds, primeCounterClassNames, ranges);
+					List<Workload> workloads = Workload.parse(options.getOrDefault("--workload", Workload.PRIMES.toString()));
+					System.out.println("Workloads: " + workloads);
+
+					if (options.containsKey("--load")) {
+						int executorThreads = Integer.parseInt(options.getOrDefault("--executor-threads", "0"));
+						workloads.stream().forEach(nextWorkload -> 
+							LoadGenerator.execute(options.get("--load"), primeCounterClassNames, ranges, nextWorkload, executorThreads));
+					}
+					else if (options.containsKey("--sweep")) {
+						workloads.stream().forEach(nextWorkload -> 
+							ScalingSweep.execute(rounds, primeCounterClassNames, ranges, Integer.parseInt(options.get("--sweep")), nextWorkload));
+					}
+					else {
+						int executorThreads = Integer.parseInt(options.getOrDefault("--executor-threads", "0"));
+						Map<String, List<Long>> durations = new HashMap<>();
+						Map<Workload, String> fastestCounters = new LinkedHashMap<>();
+						
+						for (Workload nextWorkload : workloads) {
+							System.out.println("=========");
+							System.out.println("Workload: " + nextWorkload);
+							
+							Map<String, List<Long>> workloadDurations = executeTest(rounds, primeCounterClassNames, ranges, executorThreads, nextWorkload, options);
+							workloadDurations.entrySet().stream().min(Comparator.comparingDouble(next -> next.getValue().stream().mapToLong(l -> l).average().orElse(Double.MAX_VALUE))).
+								ifPresent(next -> fastestCounters.put(nextWorkload, next.getKey()));
+							
+							// Baselines keep the plain class name for the default workload.
+							workloadDurations.forEach((k, v) -> durations.put(nextWorkload == Workload.PRIMES ? k : nextWorkload + "/" + k, v));
+						}
+						
+						if (workloads.size() > 1) {
+							System.out.println("=========");
+							System.out.println("Fastest counter per workload:");
+							fastestCounters.forEach((k, v) -> System.out.println(k + " " + v));
+						}
+						
+						if (options.containsKey("--save-baseline")) {
+							BaselineComparison.save(Paths.get(options.get("--save-baseline")), durations);
+							System.out.println("Saved baseline to " + options.get("--save-baseline"));
+						}
+						
+						if (options.containsKey("--compare-baseline")) {
+							double threshold = Double.parseDouble(options.getOrDefault("--regression-threshold", BaselineComparison.DEFAULT_THRESHOLD_PERCENT));
+							Map<String, List<Long>> baseline = BaselineComparison.load(Paths.get(options.get("--compare-baseline")));
+							
+							if (BaselineComparison.compare(baseline, durations, threshold)) {
+								System.err.println("Error: Performance regressed against the baseline");
+								System.exit(1);
+							}
+						}
+					}
 				} 
 				else {
 					System.err.println("These classes were not found");
@@ -160,32 +332,42 @@ public class Benchmark {
 				System.err.println("Invalid arguments");
 				System.err.println(USAGE);
 			}
+			catch (UncheckedIOException e) {
+				System.err.println("Error: " + e.getMessage());
+				System.exit(1);
+			}
 		}
 		else {
 			System.err.println(USAGE);
 		}
 	}
 	
-	private static class Result implements Comparable<Result> {
+	static class Result implements Comparable<Result> {
 
 		private final String counterClass;
-		private final long duration;
+		private final long durationNanos;
 		private final long count;
 		private final CountingException exception;
+		private final ResourceUsage usage;
+		private final long candidates;
 		
-		public Result(String counterClass, long duration, long count) {
+		public Result(String counterClass, long durationNanos, long count, ResourceUsage usage, long candidates) {
 			this.counterClass = counterClass;
-			this.duration = duration;
+			this.durationNanos = durationNanos;
 			this.count = count;
 			this.exception = null;
+			this.usage = usage;
+			this.candidates = candidates;
 		}
 		
 		public Result(String counterClass, CountingException exception) {
 			this.counterClass = counterClass;
 			this.exception = exception;
 			
-			this.duration = 0;
+			this.durationNanos = 0;
 			this.count = 0;
+			this.usage = null;
+			this.candidates = 0;
 		}
 		
 		public String getCounterClass() {
@@ -193,7 +375,11 @@ public class Benchmark {
 		}
 		
 		public long getDuration() {
-			return duration;
+			return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		}
+		
+		public long getDurationNanos() {
+			return durationNanos;
 		}
 		
 		public long getCount() {
@@ -203,13 +389,22 @@ public class Benchmark {
 		public CountingException getException() {
 			return exception;
 		}
+		
+		public ResourceUsage getUsage() {
+			return usage;
+		}
+		
+		public double getCpuSecondsPerMillionCandidates() {
+			return usage.getCpuNanos() / 1e9 / (candidates / 1e6);
+		}
 
 		@Override
 		public String toString() {
 			String toString;
 			
 			if (exception == null) {
-			  toString = "Counter class: " + getCounterClass() + ". Duration: " + getDuration() + ". Count: " + getCount();
+			  toString = "Counter class: " + getCounterClass() + ". Duration: " + getDuration() + ". Count: " + getCount() + ". Resources (setup and count): " + usage + 
+					  String.format(". CPU-seconds per million candidates: %.3f", getCpuSecondsPerMillionCandidates());
 			}
 			else {
 				  toString = "Counter class: " + getCounterClass() + ". Counting exception: " + exception.getMessage(); 
@@ -221,7 +416,7 @@ public class Benchmark {
 		@Override
 		public int compareTo(Result objectToCompare) {
 
-			return duration < objectToCompare.getDuration() ? -1 : duration == objectToCompare.getDuration() ? 0 : 1;
+			return Long.compare(durationNanos, objectToCompare.getDurationNanos());
 		}
 	}
 }
\ No newline at end of file
@@ -4,23 +4,42 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
- * This model uses a cached thread pool flavor of the executor service. Each range is given to a thread of the executor service and the pool expands as needed.
+ * This model uses a cached thread pool flavor of the executor service. Each range is given to a thread of the executor service and the pool expands as needed
+ * (up to the parallelism when it is set).
  *  
  * @author Nick Maiorano
  */
 public class CachedThreadPoolPrimeCounter implements PrimeCounter {
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private ExecutorService executor;
+	private ExecutorService suppliedExecutor;
 	private List<Callable<Long>> callables = new LinkedList<>();
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 
 	@Override
 	public void setup(List<LongRange> ranges) {
-		callables = ranges.stream().map(nextRange -> (Callable<Long>) () -> Util.countPrimesForOneRange(nextRange).get()).collect(Collectors.toList());
+		executor = suppliedExecutor != null ? suppliedExecutor : Util.newCachedThreadPool(parallelism);
+		callables = ranges.stream().map(nextRange -> (Callable<Long>) () -> Util.reduceOneRange(nextRange, workload).get()).collect(Collectors.toList());
 	}
 
 	@Override
@@ -30,7 +49,7 @@ public class CachedThreadPoolPrimeCounter implements PrimeCounter {
 		List<Future<Long>> futures;
 		try {
 			futures = executor.invokeAll(callables);
-			count = futures.stream().mapToLong(next -> Util.uncheckedGet(next)).sum();
+			count = futures.stream().mapToLong(next -> Util.uncheckedGet(next)).reduce(workload.getIdentity(), workload::reduce);
 		} catch (InterruptedException e) {
 			throw new CountingException("Could not count primes", e);
 		}
@@ -40,6 +59,8 @@ public class CachedThreadPoolPrimeCounter implements PrimeCounter {
 
 	@Override
 	public void tearDown() {
-		executor.shutdown();
+		if (suppliedExecutor == null) {
+			executor.shutdown();
+		}
 	}
 }
\ No newline at end of file
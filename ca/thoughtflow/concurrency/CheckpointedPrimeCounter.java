@@ -0,0 +1,159 @@
+package ca.thoughtflow.concurrency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Builds upon the cached thread pool prime counter and appends the result of every finished range to a journal on disk.
+ * When a run is restarted with the same journal, ranges already in the journal are not counted again, so a crash or a redeploy
+ * only loses the ranges that were running plus at most one flush interval of finished ones.
+ * Without a journal file, a temporary journal is used (and deleted by tearDown) to measure the journaling overhead.
+ *
+ * @author Nick Maiorano
+ */
+public class CheckpointedPrimeCounter implements PrimeCounter {
+
+	/**
+	 * Default time between forced writes of the journal.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+	private ExecutorService executor;
+	private ExecutorService suppliedExecutor;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+	private Path journalFile;
+	private boolean isTemporaryJournal;
+	private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+	private RangeJournal journal;
+	private List<Callable<Long>> callables;
+	private long resumedValue;
+	private int resumedRanges;
+	private int totalRanges;
+	private long countNanos;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
+
+	/**
+	 * Sets the journal to resume from and append to. Must be called before setup.
+	 *
+	 * @param journalFile The journal file.
+	 */
+	public void setJournal(Path journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Sets the time between forced writes of the journal. Must be called before setup.
+	 *
+	 * @param flushIntervalMillis The flush interval in milliseconds. Zero forces every record.
+	 */
+	public void setFlushInterval(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	@Override
+	public void setup(List<LongRange> ranges) {
+		try {
+			if (journalFile == null) {
+				journalFile = Files.createTempFile("primecounter", ".journal");
+				isTemporaryJournal = true;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not create journal", e);
+		}
+
+		journal = new RangeJournal(journalFile, workload, flushIntervalMillis);
+		executor = suppliedExecutor != null ? suppliedExecutor : Util.newCachedThreadPool(parallelism);
+		totalRanges = ranges.size();
+
+		// Finished ranges are reduced from the journal. Only the others are counted.
+		List<LongRange> finishedRanges = ranges.stream().filter(nextRange -> journal.getResult(nextRange) != null).collect(Collectors.toList());
+		resumedRanges = finishedRanges.size();
+		resumedValue = finishedRanges.stream().mapToLong(nextRange -> journal.getResult(nextRange)).reduce(workload.getIdentity(), workload::reduce);
+
+		callables = ranges.stream().filter(nextRange -> journal.getResult(nextRange) == null).map(nextRange -> (Callable<Long>) () -> {
+			long value = Util.reduceOneRange(nextRange, workload).get();
+			journal.append(nextRange, value);
+			return value;
+		}).collect(Collectors.toList());
+	}
+
+	@Override
+	public long countPrimes() throws CountingException {
+		long startTime = System.nanoTime();
+		List<Future<Long>> futures;
+
+		try {
+			futures = executor.invokeAll(callables);
+		} catch (InterruptedException e) {
+			throw new CountingException("Could not count primes", e);
+		}
+
+		long count = futures.stream().mapToLong(nextFuture -> Util.uncheckedGet(nextFuture)).reduce(resumedValue, workload::reduce);
+
+		// Make the last ranges durable before returning.
+		journal.flush();
+		countNanos = System.nanoTime() - startTime;
+
+		return count;
+	}
+
+	@Override
+	public void tearDown() {
+		journal.close();
+
+		if (suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
+
+		if (isTemporaryJournal) {
+			try {
+				Files.deleteIfExists(journalFile);
+			}
+			catch (IOException e) {
+				System.err.println("Could not delete journal " + journalFile);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of ranges of the last setup whose result was taken from the journal instead of being counted.
+	 *
+	 * @return The number of resumed ranges.
+	 */
+	public int getResumedRanges() {
+		return resumedRanges;
+	}
+
+	/**
+	 * Returns the resumed ranges and the journaling overhead of the last count.
+	 *
+	 * @return The summary.
+	 */
+	public String getJournalSummary() {
+		return String.format("Journal: %s. Resumed ranges: %d of %d. Flush interval: %d ms. %s. Flush time: %.1f%% of counting",
+				journalFile, resumedRanges, totalRanges, flushIntervalMillis, journal, countNanos == 0 ? 0 : journal.getFlushNanos() * 100d / countNanos);
+	}
+}
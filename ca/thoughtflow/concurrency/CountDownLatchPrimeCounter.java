@@ -1,34 +1,62 @@
 package ca.thoughtflow.concurrency;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
 
 /**
  * Builds upon the Multi-threaded prime counter and uses a countdown latch instead of a join. 
+ * When the parallelism is set, ranges are shared round-robin by that many threads. When the executor is set, the workers run on it and no threads of their own are created. The executor must be set before setup.
  * 
  * @author Nick Maiorano
  */
 public class CountDownLatchPrimeCounter implements PrimeCounter {
 
-	private final Map<Thread, Worker> threads = new HashMap<>();
+	private final List<Worker> workers = new ArrayList<>();
+	private final List<Thread> threads = new ArrayList<>();
 	private CountDownLatch latch;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private ExecutorService suppliedExecutor;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 
 	@Override
 	public void setup(List<LongRange> ranges) {
 
-		latch = new CountDownLatch(ranges.size());
-		ranges.stream().forEach(nextRange -> {
-		   Worker worker = new Worker(nextRange, latch);
-		   threads.put(new Thread(worker), worker);
-		});
+		List<List<LongRange>> rangesPerThread = Util.distribute(ranges, parallelism == MODEL_DEFAULT_PARALLELISM ? ranges.size() : parallelism);
+		latch = new CountDownLatch(rangesPerThread.size());
+		rangesPerThread.stream().forEach(nextRanges -> workers.add(new Worker(nextRanges, latch, workload)));
+
+		// Threads of our own are only needed when no executor runs the workers.
+		if (suppliedExecutor == null) {
+			workers.stream().forEach(nextWorker -> threads.add(new Thread(nextWorker)));
+		}
 	}
 
 	@Override
 	public long countPrimes() throws CountingException {
-		threads.keySet().stream().forEach(nextThread -> nextThread.start());
+		if (suppliedExecutor != null) {
+			workers.stream().forEach(nextWorker -> suppliedExecutor.execute(nextWorker));
+		}
+		else {
+			threads.stream().forEach(nextThread -> nextThread.start());
+		}
 
 		try {
 			latch.await();
@@ -37,7 +65,7 @@ public class CountDownLatchPrimeCounter implements PrimeCounter {
 			throw new CountingException("Could not finish waiting", exception);
 		}
 
-		return threads.values().stream().mapToLong(w -> w.getCount()).sum();
+		return workers.stream().mapToLong(w -> w.getCount()).reduce(workload.getIdentity(), workload::reduce);
 	}
 	
 	private static class Worker implements Runnable {
@@ -46,8 +74,8 @@ public class CountDownLatchPrimeCounter implements PrimeCounter {
 		private final CountDownLatch latch;
 		private long count = 0;
 		
-		public Worker(LongRange range, CountDownLatch latch) {
-			primeFinderFunction = Util.countPrimesForOneRange(range);
+		public Worker(List<LongRange> ranges, CountDownLatch latch, Workload workload) {
+			primeFinderFunction = Util.reduceRanges(ranges, workload);
 			this.latch = latch;
 		}
 
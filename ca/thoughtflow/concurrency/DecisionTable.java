@@ -0,0 +1,187 @@
+package ca.thoughtflow.concurrency;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of each prime counter model in nanoseconds per candidate, keyed by the situation it counted in (see AdaptivePrimeCounter).
+ * Probe costs come from calibration probes on shrunk ranges and real costs from real counts. The two are kept apart because a probe pays
+ * the same per-range overhead on far fewer candidates. A model without real costs is estimated from its probe cost scaled by the median
+ * real to probe ratio of the models that have both, so all of the models of a situation are compared on the real scale.
+ * One table is shared by every user of the same file in the JVM and is persisted as a properties file so calibration survives restarts.
+ *
+ * @author Nick Maiorano
+ */
+public class DecisionTable {
+
+	/**
+	 * Weight of a new real timing when it is blended into a model's real cost.
+	 */
+	public static final double REFINEMENT_WEIGHT = 0.25;
+
+	private static final String PROBE_SUFFIX = ".probe";
+	private static final String REAL_SUFFIX = ".real";
+	private static final Map<Path, DecisionTable> TABLES = new ConcurrentHashMap<>();
+
+	private final Path file;
+	private final Map<String, Double> costs = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> countsPerSituation = new ConcurrentHashMap<>();
+	private final Set<String> calibratingSituations = ConcurrentHashMap.newKeySet();
+
+	private DecisionTable(Path file) throws UncheckedIOException {
+		this.file = file;
+
+		if (Files.exists(file)) {
+			Properties properties = new Properties();
+
+			try (Reader reader = Files.newBufferedReader(file)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not load decision table " + file, e);
+			}
+
+			properties.stringPropertyNames().stream().filter(next -> next.endsWith(PROBE_SUFFIX) || next.endsWith(REAL_SUFFIX)).
+				forEach(next -> costs.put(next, Double.valueOf(properties.getProperty(next))));
+		}
+	}
+
+	/**
+	 * Returns the table persisted in the file, loading it on first use.
+	 *
+	 * @param file The decision table file. It need not exist yet.
+	 * @return The table shared by all users of the file.
+	 * @throws UncheckedIOException Thrown if the file could not be read.
+	 */
+	public static DecisionTable open(Path file) throws UncheckedIOException {
+		return TABLES.computeIfAbsent(file.toAbsolutePath(), DecisionTable::new);
+	}
+
+	private static String getKey(String situation, String model, String suffix) {
+		return situation + "." + model + suffix;
+	}
+
+	/**
+	 * Returns the cost of the model in the situation as measured by its last calibration probe.
+	 *
+	 * @param situation The situation.
+	 * @param model The model.
+	 * @return The cost in nanoseconds per probe candidate or null if the model was never probed in this situation.
+	 */
+	public Double getProbeCost(String situation, String model) {
+		return costs.get(getKey(situation, model, PROBE_SUFFIX));
+	}
+
+	/**
+	 * Replaces the probe cost of the model in the situation.
+	 *
+	 * @param situation The situation.
+	 * @param model The model.
+	 * @param nanosPerCandidate The cost in nanoseconds per probe candidate.
+	 */
+	public void setProbeCost(String situation, String model, double nanosPerCandidate) {
+		costs.put(getKey(situation, model, PROBE_SUFFIX), nanosPerCandidate);
+	}
+
+	/**
+	 * Blends a real timing into the real cost of the model with an exponentially weighted moving average. The first timing is taken as is.
+	 *
+	 * @param situation The situation.
+	 * @param model The model.
+	 * @param nanosPerCandidate The measured cost in nanoseconds per candidate.
+	 */
+	public void refineCost(String situation, String model, double nanosPerCandidate) {
+		costs.merge(getKey(situation, model, REAL_SUFFIX), nanosPerCandidate, (previous, measured) -> previous + REFINEMENT_WEIGHT * (measured - previous));
+	}
+
+	/**
+	 * Returns the expected real cost of the model in the situation: its real cost if it has one, its scaled probe cost otherwise.
+	 *
+	 * @param situation The situation.
+	 * @param model The model.
+	 * @param models The models of the situation, used to scale probe costs.
+	 * @return The cost in nanoseconds per candidate or null if the model was never timed in this situation.
+	 */
+	public Double getCost(String situation, String model, List<String> models) {
+		Double cost = costs.get(getKey(situation, model, REAL_SUFFIX));
+		Double probeCost = getProbeCost(situation, model);
+
+		if (cost == null && probeCost != null) {
+			cost = probeCost * getProbeScale(situation, models);
+		}
+
+		return cost;
+	}
+
+	private double getProbeScale(String situation, List<String> models) {
+		List<Double> ratios = models.stream().filter(next -> getProbeCost(situation, next) != null && costs.get(getKey(situation, next, REAL_SUFFIX)) != null).
+				map(next -> costs.get(getKey(situation, next, REAL_SUFFIX)) / getProbeCost(situation, next)).sorted().collect(Collectors.toList());
+
+		return ratios.isEmpty() ? 1 : ratios.get(ratios.size() / 2);
+	}
+
+	/**
+	 * Counts one more count in the situation.
+	 *
+	 * @param situation The situation.
+	 * @return The number of counts in the situation since the table was opened, this one included.
+	 */
+	public long incrementCount(String situation) {
+		return countsPerSituation.computeIfAbsent(situation, k -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * Claims the calibration of the situation so that only one caller probes it at a time.
+	 *
+	 * @param situation The situation.
+	 * @return True if the caller now calibrates the situation and must end the calibration, false if someone else is calibrating it.
+	 */
+	public boolean startCalibration(String situation) {
+		return calibratingSituations.add(situation);
+	}
+
+	/**
+	 * Releases the calibration of the situation claimed by startCalibration.
+	 *
+	 * @param situation The situation.
+	 */
+	public void endCalibration(String situation) {
+		calibratingSituations.remove(situation);
+	}
+
+	/**
+	 * Writes the table to its file. The file is replaced in one move so a crash never leaves a partial table.
+	 *
+	 * @throws UncheckedIOException Thrown if the file could not be written.
+	 */
+	public synchronized void save() throws UncheckedIOException {
+		Properties properties = new Properties();
+		costs.forEach((k, v) -> properties.setProperty(k, String.valueOf(v)));
+
+		try {
+			Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), "decisions", ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temporaryFile)) {
+				properties.store(writer, "Prime counter decision table - nanoseconds per candidate keyed by workload.cores.rangeCountBucket.rangeSizeBucket.model.probe|real");
+			}
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not save decision table " + file, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+}
@@ -1,27 +1,47 @@
 package ca.thoughtflow.concurrency;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 
 /**
  * This model uses a fork/join flavor of the executor service. Each range is split (forked) into smaller ranges until the range is at the preferred range.
+ * Like the other models, ranges include their start and exclude their end.
  * The each forked range is then summed and rejoined to the parent range.
  * 
  * @author Nick Maiorano
  */
 public class ForkJoinPrimeCounter implements PrimeCounter {
 
-	private final ForkJoinPool executor = (ForkJoinPool) Executors.newWorkStealingPool();
+	private ForkJoinPool executor;
+	private ForkJoinPool suppliedExecutor;
 	private List<Worker> workers;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) throws IllegalArgumentException {
+		suppliedExecutor = Util.requireForkJoinPool(executor);
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 
 	@Override
 	public void setup(List<LongRange> ranges) {
-		workers = ranges.stream().map(nextRange -> new Worker(nextRange.getStart(), nextRange.getEnd())).collect(Collectors.toList());
+		executor = suppliedExecutor != null ? suppliedExecutor : (ForkJoinPool) (parallelism == MODEL_DEFAULT_PARALLELISM ? Executors.newWorkStealingPool() : Executors.newWorkStealingPool(parallelism));
+		workers = ranges.stream().map(nextRange -> new Worker(nextRange.getStart(), nextRange.getEnd(), workload)).collect(Collectors.toList());
 	}
 
 	@Override
@@ -29,12 +49,14 @@ public class ForkJoinPrimeCounter implements PrimeCounter {
 
 		workers.stream().forEach(nextWorker -> executor.execute(nextWorker));
 
-		return workers.stream().mapToLong(nextWorker -> Util.uncheckedGet(nextWorker)).sum();
+		return workers.stream().mapToLong(nextWorker -> Util.uncheckedGet(nextWorker)).reduce(workload.getIdentity(), workload::reduce);
 	}
 
 	@Override
 	public void tearDown() {
-		executor.shutdownNow();
+		if (suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
 	}
 	
 	@SuppressWarnings("serial")
@@ -44,21 +66,23 @@ public class ForkJoinPrimeCounter implements PrimeCounter {
 		
 		private final long start;
 		private final long end;
+		private final Workload workload;
 		
-		public Worker(long start, long end) {
+		public Worker(long start, long end, Workload workload) {
 			this.start = start;
 			this.end = end;
+			this.workload = workload;
 		}
 
 		@Override
 		public Long compute() {
-			long count = 0;
+			long count = workload.getIdentity();
 			if (end - start > MINIMUM_RANGE) {
 				long halfWay = (end - start) / 2 + start;
 				ForkJoinTask<Long> firstHalf = doSplit(start, halfWay);
-				ForkJoinTask<Long> secondHalf = doSplit(halfWay + 1, end);
+				ForkJoinTask<Long> secondHalf = doSplit(halfWay, end);
 				
-				count = firstHalf.join() + secondHalf.join();
+				count = workload.reduce(firstHalf.join(), secondHalf.join());
 			}
 			else {
 				count = doCompute(start, end);
@@ -68,12 +92,12 @@ public class ForkJoinPrimeCounter implements PrimeCounter {
 		}
 		
 		private ForkJoinTask<Long> doSplit(long startRange, long endRange) {
-			Worker newWorker = new Worker(startRange, endRange);
+			Worker newWorker = new Worker(startRange, endRange, workload);
 			return newWorker.fork();
 		}
 		
 		private Long doCompute(long startRange, long endRange) {
-			return LongStream.rangeClosed(startRange, endRange).filter(Util::isPrime).count();
+			return workload.reduceRange(startRange, endRange);
 		}
 	}
 }
\ No newline at end of file
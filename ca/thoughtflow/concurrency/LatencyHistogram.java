@@ -0,0 +1,141 @@
+package ca.thoughtflow.concurrency;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram in the style of HdrHistogram. Values below 128 are counted exactly and larger values are counted in
+ * log-linear buckets of 64 sub-buckets each, so any recorded value is reported within 1.6% of its true value.
+ *
+ * @author Nick Maiorano
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	private static final int BUCKET_COUNT = Long.SIZE - SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + (BUCKET_COUNT - 1) * SUB_BUCKET_HALF_COUNT);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	private static int getIndex(long value) {
+		int index;
+
+		if (value < SUB_BUCKET_COUNT) {
+			index = (int) value;
+		}
+		else {
+			int bucket = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+			int subBucket = (int) (value >>> bucket);
+			index = SUB_BUCKET_COUNT + (bucket - 1) * SUB_BUCKET_HALF_COUNT + subBucket - SUB_BUCKET_HALF_COUNT;
+		}
+
+		return index;
+	}
+
+	private static long getHighestEquivalentValue(int index) {
+		long value;
+
+		if (index < SUB_BUCKET_COUNT) {
+			value = index;
+		}
+		else {
+			int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+			long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+			value = ((subBucket + 1) << bucket) - 1;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Records one value.
+	 *
+	 * @param value The value to record. Negative values are recorded as zero.
+	 */
+	public void record(long value) {
+		long positiveValue = Math.max(value, 0);
+
+		counts.incrementAndGet(getIndex(positiveValue));
+		totalCount.increment();
+		sum.add(positiveValue);
+		max.accumulate(positiveValue);
+	}
+
+	/**
+	 * Clears all recorded values. Values recorded concurrently with the reset may be partially kept.
+	 */
+	public void reset() {
+		for (int index = 0; index < counts.length(); ++index) {
+			counts.set(index, 0);
+		}
+		totalCount.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	public long getTotalCount() {
+		return totalCount.sum();
+	}
+
+	public double getMean() {
+		long count = getTotalCount();
+		return count == 0 ? 0 : (double) sum.sum() / count;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the value at the given percentile.
+	 *
+	 * @param percentile The percentile between 0 and 100.
+	 * @return The highest value equivalent to the value at the percentile (never above the maximum recorded value).
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long target = Math.max((long) Math.ceil(percentile / 100 * getTotalCount()), 1);
+		long cumulativeCount = 0;
+		long value = 0;
+
+		for (int index = 0; index < counts.length() && cumulativeCount < target; ++index) {
+			cumulativeCount += counts.get(index);
+			value = getHighestEquivalentValue(index);
+		}
+
+		return Math.min(value, getMax());
+	}
+
+	/**
+	 * Prints the percentile distribution the way HdrHistogram does: each line halves the distance to 100% of the previous line.
+	 *
+	 * @param out The stream to print to.
+	 * @param valueUnitRatio The number of recorded units per printed unit (e.g. 1000000 to print nanoseconds as milliseconds).
+	 */
+	public void printPercentileDistribution(PrintStream out, double valueUnitRatio) {
+		out.println(String.format("%12s %14s %10s", "Value", "Percentile", "Count"));
+
+		for (double percentile = 0, step = 50; percentile < 99.999; percentile += step, step /= 2) {
+			long value = getValueAtPercentile(percentile);
+			out.println(String.format("%12.3f %14.6f %10d", value / valueUnitRatio, percentile / 100, getCountAtOrBelow(value)));
+		}
+
+		out.println(String.format("%12.3f %14.6f %10d", getMax() / valueUnitRatio, 1d, getTotalCount()));
+		out.println(String.format("#[Mean = %.3f, Max = %.3f, Total count = %d]", getMean() / valueUnitRatio, getMax() / valueUnitRatio, getTotalCount()));
+	}
+
+	private long getCountAtOrBelow(long value) {
+		long count = 0;
+
+		for (int index = 0; index <= getIndex(value); ++index) {
+			count += counts.get(index);
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,198 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Drives each prime counter with many concurrent callers and reports throughput and latency percentiles.
+ * Each call sets up, counts and tears down one counter, the way a service would answer one query.
+ *
+ * Two modes are supported:
+ *   - closed:callers:seconds - a fixed number of callers each issue their next call as soon as the previous one returns.
+ *   - open:callsPerSecond:seconds - calls arrive at a fixed rate whether or not earlier calls have returned. Latency is measured from the
+ *     intended arrival time rather than the actual start, which corrects for coordinated omission when the counter falls behind.
+ *     Arrivals that find the callers' queue full are dropped, and arrivals the generator itself issued late are counted, so that both are
+ *     reported rather than hidden in the latencies. The rate is at most MAX_OPEN_LOOP_RATE.
+ *
+ * When an executor thread count is given, all calls of a counter share one pool of that size, like queries sharing a service's cores.
+ *
+ * @author Nick Maiorano
+ */
+public class LoadGenerator {
+
+	/**
+	 * Highest open loop rate, in calls per second, that the generator can issue on schedule.
+	 */
+	public static final double MAX_OPEN_LOOP_RATE = 10_000;
+
+	private static final int MAX_OPEN_LOOP_CALLERS = 256;
+	private static final int MAX_OPEN_LOOP_QUEUED_CALLS = 4096;
+	private static final long LATE_ISSUE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final String primeCounterClassName;
+	private final List<LongRange> ranges;
+	private final Workload workload;
+	private final ExecutorService sharedExecutor;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder failedCalls = new LongAdder();
+	private final LongAdder droppedCalls = new LongAdder();
+	private final LongAdder lateCalls = new LongAdder();
+
+	private LoadGenerator(String primeCounterClassName, List<LongRange> ranges, Workload workload, ExecutorService sharedExecutor) {
+		this.primeCounterClassName = primeCounterClassName;
+		this.ranges = ranges;
+		this.workload = workload;
+		this.sharedExecutor = sharedExecutor;
+	}
+
+	private void call() {
+		PrimeCounter counter = Benchmark.getPrimeCounters(List.of(primeCounterClassName), workload).get(0);
+
+		if (sharedExecutor != null) {
+			counter.setExecutor(sharedExecutor);
+		}
+		counter.setup(ranges);
+
+		try {
+			counter.countPrimes();
+		}
+		finally {
+			counter.tearDown();
+		}
+	}
+
+	private void callAndRecord(long intendedStartTime) {
+		try {
+			call();
+			latencies.record(System.nanoTime() - intendedStartTime);
+		}
+		catch (RuntimeException exception) {
+			failedCalls.increment();
+		}
+	}
+
+	private void runClosedLoop(int callers, long endTime) throws InterruptedException {
+		List<Thread> threads = IntStream.range(0, callers).mapToObj(i -> new Thread(() -> {
+			while (System.nanoTime() < endTime) {
+				callAndRecord(System.nanoTime());
+			}
+		})).collect(Collectors.toList());
+
+		threads.stream().forEach(Thread::start);
+		for (Thread nextThread : threads) {
+			nextThread.join();
+		}
+	}
+
+	private void runOpenLoop(double callsPerSecond, long startTime, long endTime) throws InterruptedException {
+		ExecutorService callers = new ThreadPoolExecutor(MAX_OPEN_LOOP_CALLERS, MAX_OPEN_LOOP_CALLERS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(MAX_OPEN_LOOP_QUEUED_CALLS));
+		long intervalNanos = (long) (1e9 / callsPerSecond);
+
+		try {
+			// Calls are issued on schedule even when the callers are behind: late calls queue up and their wait counts as latency.
+			// Calls that don't fit in the queue are dropped and counted, and so are calls the generator itself issued late.
+			for (long intendedStartTime = startTime; intendedStartTime < endTime; intendedStartTime += intervalNanos) {
+				long waitNanos = intendedStartTime - System.nanoTime();
+				if (waitNanos > 0) {
+					LockSupport.parkNanos(waitNanos);
+				}
+				else if (waitNanos < -LATE_ISSUE_NANOS) {
+					lateCalls.increment();
+				}
+
+				long callStartTime = intendedStartTime;
+				try {
+					callers.execute(() -> callAndRecord(callStartTime));
+				}
+				catch (RejectedExecutionException exception) {
+					droppedCalls.increment();
+				}
+			}
+		}
+		finally {
+			callers.shutdown();
+			callers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void report(String mode, long elapsedNanos) {
+		System.out.println("=========");
+		System.out.println("Load of " + primeCounterClassName + " (" + workload + ", " + mode + ")");
+		System.out.println(String.format("Completed calls: %d. Failed calls: %d. Dropped calls: %d. Late calls: %d. Throughput: %.1f calls per second",
+				latencies.getTotalCount(), failedCalls.sum(), droppedCalls.sum(), lateCalls.sum(), latencies.getTotalCount() / (elapsedNanos / 1e9)));
+		System.out.println(String.format("Latency (ms): p50 %.1f. p90 %.1f. p99 %.1f. p99.9 %.1f. max %.1f", latencies.getValueAtPercentile(50) / 1e6,
+				latencies.getValueAtPercentile(90) / 1e6, latencies.getValueAtPercentile(99) / 1e6, latencies.getValueAtPercentile(99.9) / 1e6, latencies.getMax() / 1e6));
+		latencies.printPercentileDistribution(System.out, 1e6);
+	}
+
+	/**
+	 * Runs the load against each prime counter in turn and prints one report per counter.
+	 *
+	 * @param mode closed:callers:seconds or open:callsPerSecond:seconds.
+	 * @param primeCounterClassNames The prime counters to load.
+	 * @param ranges The ranges counted by every call.
+	 * @param workload The workload applied to the ranges.
+	 * @param executorThreads The size of the pool shared by all calls of a counter or zero to let each call use its own threads.
+	 * @throws NumberFormatException Thrown if the mode is invalid.
+	 */
+	public static void execute(String mode, List<String> primeCounterClassNames, List<LongRange> ranges, Workload workload, int executorThreads) throws NumberFormatException {
+		String[] parameters = mode.split(":");
+		if (parameters.length != 3 || !(parameters[0].equals("closed") || parameters[0].equals("open"))) {
+			throw new NumberFormatException("Invalid load mode " + mode);
+		}
+		double load = Double.parseDouble(parameters[1]);
+		long seconds = Long.parseLong(parameters[2]);
+		boolean isClosedLoop = parameters[0].equals("closed");
+
+		// At least one caller, or a rate of at least one call per hour (so that the schedule advances) that the generator can keep up with.
+		if ((isClosedLoop ? load < 1 || load != Math.floor(load) || load > Integer.MAX_VALUE : !(load >= 1d / 3600 && load <= MAX_OPEN_LOOP_RATE)) || seconds <= 0) {
+			throw new NumberFormatException("Invalid load mode " + mode + ": expected a positive whole number of callers or a rate of at most " + MAX_OPEN_LOOP_RATE +
+					" calls per second and a positive number of seconds");
+		}
+		long durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+
+		// Counters that cannot apply the workload are reported and skipped.
+		primeCounterClassNames.stream().filter(next -> !Benchmark.getPrimeCounters(List.of(next), workload).isEmpty()).forEach(nextClassName -> {
+			ExecutorService sharedExecutor = executorThreads > 0 ? new ForkJoinPool(executorThreads) : null;
+			LoadGenerator generator = new LoadGenerator(nextClassName, ranges, workload, sharedExecutor);
+
+			try {
+				// Warm up so that the first calls don't measure class loading and the JIT. A failure is reported but doesn't stop the load.
+				try {
+					generator.call();
+				}
+				catch (RuntimeException exception) {
+					generator.failedCalls.increment();
+					System.err.println("Warm-up call of " + nextClassName + " failed: " + exception);
+				}
+
+				long startTime = System.nanoTime();
+				if (isClosedLoop) {
+					generator.runClosedLoop((int) load, startTime + durationNanos);
+				}
+				else {
+					generator.runOpenLoop(load, startTime, startTime + durationNanos);
+				}
+				generator.report(mode, System.nanoTime() - startTime);
+			}
+			catch (InterruptedException e) {
+				throw new CountingException("Load interrupted", e);
+			}
+			finally {
+				if (sharedExecutor != null) {
+					sharedExecutor.shutdownNow();
+				}
+			}
+		});
+	}
+}
@@ -2,6 +2,7 @@ package ca.thoughtflow.concurrency;
 
 /**
  * This class holds ranges of longs. This class is assigned to worker threads.
+ * Ranges include their start and exclude their end, so consecutive ranges share their boundary without overlapping.
  * 
  * @author Nick Maiorano
  */
@@ -10,16 +11,26 @@ public class LongRange {
 	private final long start;
 	private final long end;
 	
+	/**
+	 * Returns the empty range that precedes the first range. Counting starts at 1.
+	 */
 	public static LongRange createDummy() {
-		return new LongRange(0, 0);
+		return new LongRange(1, 1);
 	}
 	
 	public static LongRange createNext(LongRange previous, long range) {
-		return new LongRange(previous.getEnd() + 1, previous.getEnd() + range);
+		return new LongRange(previous.getEnd(), previous.getEnd() + range);
 	}
 
-	public static LongRange createLast(LongRange previous, long range) {
-		return new LongRange(previous.getEnd() + 1, range);
+	/**
+	 * Returns the range from the end of the previous range up to and including the last number.
+	 */
+	public static LongRange createLast(LongRange previous, long last) {
+		return new LongRange(previous.getEnd(), last + 1);
+	}
+
+	public static LongRange create(long start, long end) {
+		return new LongRange(start, end);
 	}
 	
 	private LongRange(long start, long end) {
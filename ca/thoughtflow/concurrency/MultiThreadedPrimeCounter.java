@@ -7,13 +7,16 @@ import java.util.function.Consumer;
 
 /**
  * This counter uses primitive threads to count the number of primes. Each range is assigned to a worker thread and fired off. 
- * Threads are then joined by main thread and summed.
+ * Threads are then joined by main thread and summed. When the parallelism is set, ranges are shared round-robin by that many threads.
+ * Since joining threads is the point of this model, it always creates its own threads and ignores any supplied executor.
  * 
  * @author Nick Maiorano
  */
 public class MultiThreadedPrimeCounter implements PrimeCounter {
 
 	private Map<Thread, Worker> threads = new HashMap<>();
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
 	private static final Consumer<Thread> uncheckedJoin = next -> {
 		try {
 			next.join();
@@ -23,12 +26,23 @@ public class MultiThreadedPrimeCounter implements PrimeCounter {
 		}
 	};
 
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
+
 	@Override
 	public void setup(List<LongRange> ranges) {
 
-		// Create the workers.
-		ranges.stream().forEach(nextRange -> {
-		   Worker worker = new Worker(nextRange);
+		// Create the workers - one per range unless the parallelism is set.
+		int threadCount = parallelism == MODEL_DEFAULT_PARALLELISM ? ranges.size() : parallelism;
+		Util.distribute(ranges, threadCount).stream().forEach(nextRanges -> {
+		   Worker worker = new Worker(nextRanges, workload);
 		   threads.put(new Thread(worker), worker);
 		});
 	}
@@ -39,21 +53,23 @@ public class MultiThreadedPrimeCounter implements PrimeCounter {
 		threads.keySet().stream().forEach(next -> next.start());
 		threads.keySet().stream().forEach(uncheckedJoin);
 		
-		return threads.values().stream().mapToLong(next -> next.getCount()).sum();
+		return threads.values().stream().mapToLong(next -> next.getCount()).reduce(workload.getIdentity(), workload::reduce);
 	}
 	
 	private static class Worker implements Runnable {
 		
-		private final LongRange range;
+		private final List<LongRange> ranges;
+		private final Workload workload;
 		private long count = 0;
 		
-		public Worker(LongRange range) {
-			this.range = range;
+		public Worker(List<LongRange> ranges, Workload workload) {
+			this.ranges = ranges;
+			this.workload = workload;
 		}
 
 		@Override
 		public void run() {
-			count = Util.countPrimesForOneRange(range).get();
+			count = Util.reduceRanges(ranges, workload).get();
 		}
 		
 		public long getCount() {
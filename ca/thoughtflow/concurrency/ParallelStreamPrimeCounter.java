@@ -1,32 +1,72 @@
 package ca.thoughtflow.concurrency;
 
 import java.util.List;
-import java.util.stream.LongStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This model uses the parallel stream to count the number of primes. The parallel stream handles all of the distribution of work.
  * It is the most abstract model of all (e.g. least amount of code of all).
+ * Streams run on the common pool unless the parallelism or the executor is set, in which case they run inside that dedicated pool.
  * 
  * @author Nick Maiorano
  */
 public class ParallelStreamPrimeCounter implements PrimeCounter {
 	
 	private List<LongRange> ranges;
+	private ForkJoinPool executor;
+	private ForkJoinPool suppliedExecutor;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+	
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+	
+	@Override
+	public void setExecutor(ExecutorService executor) throws IllegalArgumentException {
+		suppliedExecutor = Util.requireForkJoinPool(executor);
+	}
+	
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 	
 	@Override
 	public void setup(List<LongRange> ranges) {
 		this.ranges = ranges;
+		
+		if (suppliedExecutor != null) {
+			executor = suppliedExecutor;
+		}
+		else if (parallelism != MODEL_DEFAULT_PARALLELISM) {
+			executor = new ForkJoinPool(parallelism);
+		}
 	}
 	
 	@Override
 	public long countPrimes() {
+		// Parallel streams started from inside a fork/join pool run in that pool rather than the common pool.
+		return executor == null ? countInCurrentPool() : Util.uncheckedGet(executor.submit(this::countInCurrentPool));
+	}
+	
+	@Override
+	public void tearDown() {
+		if (executor != null && suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	private long countInCurrentPool() {
 		// Inner and outer stream both use parallel streams.
 		
 		// Outer stream
 		return ranges.stream().parallel().map(
 				// Inner stream
-				nextRange -> LongStream.range(nextRange.getStart(), nextRange.getEnd()).parallel().filter(Util::isPrime).count()).
+				nextRange -> workload.elements(nextRange.getStart(), nextRange.getEnd()).parallel().map(workload::map).reduce(workload.getIdentity(), workload::reduce)).
 			// Outer stream	
-			mapToLong(l -> l).sum();
+			mapToLong(l -> l).reduce(workload.getIdentity(), workload::reduce);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package ca.thoughtflow.concurrency;
+
+import static ca.thoughtflow.concurrency.Util.getDefaultParallelism;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Resident prime-count query server on localhost. Unlike the benchmark, the worker pool and the base prime table stay warm between queries.
+ * When a prime counter class is given, each query runs that concurrency model on the resident worker pool (still testing with the base prime table).
+ *
+ * Endpoints:
+ *   - GET /count?start=s&amp;end=e[&amp;ranges=n] counts the primes in [s, e) split into n ranges.
+ *   - GET /metrics[?reset=true] reports queries per second and latency percentiles since start (or the last reset).
+ *
+ * At most maxConcurrentQueries are counted at once. Queries that cannot be admitted within the admission timeout get a 503.
+ * Latency and the admission timeout both run from when the server hands the query to its handler pool, so time spent queued counts.
+ * Queries with an end above BasePrimeTable.MAX_CANDIDATE get a 400 since the base prime table would not fit in memory. So do queries spanning
+ * more than MAX_SPAN numbers or asking for more than MAX_RANGES ranges, which would hold an admission and the worker pool for too long.
+ *
+ * @author Nick Maiorano
+ */
+public class PrimeCountServer {
+
+	private static final String USAGE = "Usage: PrimeCountServer [port [parallelism [maxConcurrentQueries [primeCounterClassName]]]]";
+	private static final long ADMISSION_TIMEOUT_MILLIS = 100;
+	private static final long WARMUP_END = 1_000_000;
+	private static final int WARMUP_QUERIES = 20;
+	private static final int MAX_RANGES = 1 << 16;
+	private static final long MAX_SPAN = 100_000_000;
+
+	private final HttpServer server;
+	private final ExecutorService handlerExecutor;
+	private final ForkJoinPool workerPool;
+	private final Semaphore admissions;
+	private final ThreadLocal<Long> acceptTime = new ThreadLocal<>();
+	private final BasePrimeTable basePrimes = new BasePrimeTable();
+	private final Workload workload = Workload.countPrimes("primes", basePrimes::isPrime);
+	private final int parallelism;
+	private final Supplier<PrimeCounter> primeCounterFactory;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder rejectedQueries = new LongAdder();
+	private final LongAdder failedQueries = new LongAdder();
+	private volatile long metricsStartTime = System.nanoTime();
+
+	public PrimeCountServer(int port, int parallelism, int maxConcurrentQueries, Supplier<PrimeCounter> primeCounterFactory) throws IOException {
+		this.parallelism = parallelism;
+		this.primeCounterFactory = primeCounterFactory;
+		workerPool = new ForkJoinPool(parallelism);
+		admissions = new Semaphore(maxConcurrentQueries);
+		handlerExecutor = Executors.newFixedThreadPool(maxConcurrentQueries * 2);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		// Stamp each exchange when it is queued so that the handler can account for the wait.
+		server.setExecutor(command -> {
+			long queuedTime = System.nanoTime();
+			handlerExecutor.execute(() -> {
+				acceptTime.set(queuedTime);
+				command.run();
+			});
+		});
+		server.createContext("/count", this::handleCount);
+		server.createContext("/metrics", this::handleMetrics);
+	}
+
+	/**
+	 * Warms up the worker pool, the JIT and the base prime table, then starts accepting queries.
+	 */
+	public void start() {
+		LongStream.range(0, WARMUP_QUERIES).forEach(i -> count(0, WARMUP_END, parallelism));
+		latencies.reset();
+		metricsStartTime = System.nanoTime();
+		server.start();
+	}
+
+	/**
+	 * Stops accepting queries and shuts down the pools.
+	 */
+	public void stop() {
+		server.stop(0);
+		handlerExecutor.shutdownNow();
+		workerPool.shutdownNow();
+	}
+
+	/**
+	 * Counts the primes in [start, end) on the resident worker pool.
+	 *
+	 * @param start The first number of the span.
+	 * @param end The end of the span (exclusive).
+	 * @param numberOfRanges The number of ranges the span is split into.
+	 * @return The count of primes.
+	 * @throws CountingException Thrown if the primes could not be counted.
+	 */
+	public long count(long start, long end, int numberOfRanges) throws CountingException {
+		basePrimes.ensureCapacity(end);
+		long rangeSize = Math.max((end - start + numberOfRanges - 1) / numberOfRanges, 1);
+		List<LongRange> ranges = LongStream.iterate(start, next -> next < end, next -> next + rangeSize).
+				mapToObj(next -> LongRange.create(next, Math.min(next + rangeSize, end))).collect(Collectors.toList());
+
+		long count;
+		
+		if (primeCounterFactory != null) {
+			PrimeCounter counter = primeCounterFactory.get();
+			counter.setExecutor(workerPool);
+			counter.setWorkload(workload);
+			counter.setup(ranges);
+			try {
+				count = counter.countPrimes();
+			}
+			finally {
+				counter.tearDown();
+			}
+		}
+		else {
+			// Parallel streams started from inside a fork/join pool run in that pool.
+			count = Util.uncheckedGet(workerPool.submit(() -> ranges.parallelStream().mapToLong(nextRange ->
+				workload.reduceRange(nextRange.getStart(), nextRange.getEnd())).sum()));
+		}
+		
+		return count;
+	}
+	
+	private static Supplier<PrimeCounter> getPrimeCounterFactory(String primeCounterClassName) throws ReflectiveOperationException {
+		Constructor<? extends PrimeCounter> constructor = Class.forName(primeCounterClassName).asSubclass(PrimeCounter.class).getDeclaredConstructor();
+		
+		return () -> {
+			try {
+				return constructor.newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new CountingException("Could not create " + primeCounterClassName, e);
+			}
+		};
+	}
+
+	private void handleCount(HttpExchange exchange) throws IOException {
+		long startTime = acceptTime.get() != null ? acceptTime.get() : System.nanoTime();
+		long admissionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ADMISSION_TIMEOUT_MILLIS);
+
+		try {
+			Map<String, String> parameters = getParameters(exchange.getRequestURI());
+			long start = Long.parseLong(parameters.getOrDefault("start", "0"));
+			long end = Long.parseLong(parameters.get("end"));
+			int numberOfRanges = Integer.parseInt(parameters.getOrDefault("ranges", String.valueOf(parallelism * 4)));
+
+			if (start < 0 || end < start || numberOfRanges < 1) {
+				respond(exchange, 400, "{\"error\": \"Expected 0 <= start <= end and ranges >= 1\"}");
+			}
+			else if (end > BasePrimeTable.MAX_CANDIDATE) {
+				respond(exchange, 400, "{\"error\": \"Expected end <= " + BasePrimeTable.MAX_CANDIDATE + "\"}");
+			}
+			else if (end - start > MAX_SPAN || numberOfRanges > MAX_RANGES) {
+				respond(exchange, 400, "{\"error\": \"Expected end - start <= " + MAX_SPAN + " and ranges <= " + MAX_RANGES + "\"}");
+			}
+			else if (!admissions.tryAcquire(Math.max(admissionTimeoutNanos - (System.nanoTime() - startTime), 0), TimeUnit.NANOSECONDS)) {
+				rejectedQueries.increment();
+				respond(exchange, 503, "{\"error\": \"Too many concurrent queries\"}");
+			}
+			else {
+				try {
+					long count = count(start, end, numberOfRanges);
+					long latency = System.nanoTime() - startTime;
+					latencies.record(latency);
+					respond(exchange, 200, String.format("{\"start\": %d, \"end\": %d, \"count\": %d, \"micros\": %d}", start, end, count,
+							TimeUnit.NANOSECONDS.toMicros(latency)));
+				}
+				finally {
+					admissions.release();
+				}
+			}
+		}
+		catch (NumberFormatException | NullPointerException exception) {
+			respond(exchange, 400, "{\"error\": \"Expected numeric start, end and ranges parameters\"}");
+		}
+		catch (InterruptedException | CountingException exception) {
+			failedQueries.increment();
+			respond(exchange, 500, "{\"error\": \"Could not count primes\"}");
+		}
+		catch (RuntimeException exception) {
+			// Anything else would end the exchange without a response.
+			failedQueries.increment();
+			respond(exchange, 500, "{\"error\": \"Internal error: " + exception.getClass().getSimpleName() + "\"}");
+		}
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		double seconds = (System.nanoTime() - metricsStartTime) / 1e9;
+		long completed = latencies.getTotalCount();
+
+		String metrics = String.format("{\"seconds\": %.1f, \"completed\": %d, \"rejected\": %d, \"failed\": %d, \"queriesPerSecond\": %.1f, " +
+				"\"meanMicros\": %.0f, \"p50Micros\": %d, \"p99Micros\": %d, \"p999Micros\": %d, \"maxMicros\": %d, \"basePrimes\": %d}",
+				seconds, completed, rejectedQueries.sum(), failedQueries.sum(), completed / seconds, latencies.getMean() / 1000,
+				latencies.getValueAtPercentile(50) / 1000, latencies.getValueAtPercentile(99) / 1000, latencies.getValueAtPercentile(99.9) / 1000,
+				latencies.getMax() / 1000, basePrimes.size());
+
+		if ("true".equals(getParameters(exchange.getRequestURI()).get("reset"))) {
+			latencies.reset();
+			rejectedQueries.reset();
+			failedQueries.reset();
+			metricsStartTime = System.nanoTime();
+		}
+
+		respond(exchange, 200, metrics);
+	}
+
+	private static Map<String, String> getParameters(URI uri) {
+		Map<String, String> parameters = new HashMap<>();
+
+		if (uri.getQuery() != null) {
+			Arrays.stream(uri.getQuery().split("&")).map(next -> next.split("=", 2)).filter(next -> next.length == 2).
+				forEach(next -> parameters.put(next[0], next[1]));
+		}
+
+		return parameters;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+			int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : getDefaultParallelism();
+			int maxConcurrentQueries = args.length > 2 ? Integer.parseInt(args[2]) : parallelism;
+			Supplier<PrimeCounter> primeCounterFactory = args.length > 3 ? getPrimeCounterFactory(args[3]) : null;
+
+			PrimeCountServer primeCountServer = new PrimeCountServer(port, parallelism, maxConcurrentQueries, primeCounterFactory);
+			Runtime.getRuntime().addShutdownHook(new Thread(primeCountServer::stop));
+			primeCountServer.start();
+			System.out.println("Listening on http://localhost:" + port + "/count?start=0&end=1000000");
+		}
+		catch (NumberFormatException e) {
+			System.err.println("Invalid arguments");
+			System.err.println(USAGE);
+		}
+		catch (ReflectiveOperationException | ClassCastException e) {
+			System.err.println("Not a prime counter class: " + args[3]);
+		}
+		catch (IOException e) {
+			System.err.println("Could not start server: " + e.getMessage());
+		}
+	}
+}
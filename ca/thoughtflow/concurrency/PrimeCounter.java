@@ -1,9 +1,11 @@
 package ca.thoughtflow.concurrency;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Interface used to implement all prime counters. Each method will be called once to benchmark:
+ * Interface used to implement all prime counters. Although named after the original workload, counters apply any workload to the ranges.
+ * Each method will be called once to benchmark:
  *   - setup
  *   - countPrimes
  *   - tearDown
@@ -12,6 +14,40 @@ import java.util.List;
  */
 public interface PrimeCounter {
 
+	/**
+	 * Parallelism value meaning the model picks its own level of parallelism (one thread per range, an unbounded pool, the common pool, etc.).
+	 */
+	public static final int MODEL_DEFAULT_PARALLELISM = 0;
+
+	/**
+	 * Optional method to set the number of worker threads the model may use. Must be called before setup.
+	 * Models that are single-threaded by nature can ignore it.
+	 * 
+	 * @param parallelism The number of worker threads or MODEL_DEFAULT_PARALLELISM to let the model decide.
+	 */
+	default public void setParallelism(int parallelism) {};
+	
+	/**
+	 * Optional method to run the model on the given executor instead of a pool of its own. Must be called before setup.
+	 * The executor is sized by the caller, takes precedence over the parallelism and is not shut down by tearDown.
+	 * Models built on fork/join require a ForkJoinPool. Models that manage their own threads can ignore it.
+	 * 
+	 * @param executor The executor to run on.
+	 * @throws IllegalArgumentException Thrown if the model cannot run on this kind of executor.
+	 */
+	default public void setExecutor(ExecutorService executor) throws IllegalArgumentException {};
+	
+	/**
+	 * Optional method to apply another workload than counting primes to the ranges. Must be called before setup.
+	 * countPrimes then returns the reduced value of the workload.
+	 * 
+	 * @param workload The workload to apply.
+	 * @throws UnsupportedOperationException Thrown if the model only counts primes.
+	 */
+	default public void setWorkload(Workload workload) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(getClass().getName() + " only counts primes");
+	};
+
 	/**
 	 * Performs any setup required by the prime counter. 
 	 * No counting should be done in this step - only setup the prime counter in order to fire off counting in the countPrimes() step.
@@ -2,11 +2,14 @@ package ca.thoughtflow.concurrency;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This model uses promises to count the number of primes in the range.
  * Each promise counts the primes for one range and chained together with other primes to sum.
  * This is a faster algorithm because even chaining is done asynchronously.
+ * Promises run on the common pool unless the parallelism or the executor is set, in which case they run on that dedicated pool.
  * 
  * @author Nick Maiorano
  */
@@ -14,28 +17,61 @@ public class PromisePrimeCounter implements PrimeCounter {
 
 	private CompletableFuture<Long> firstPromise;
 	private CompletableFuture<Long> lastPromise;
+	private ExecutorService executor = ForkJoinPool.commonPool();
+	private ExecutorService suppliedExecutor;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 
 	@Override
 	public void setup(List<LongRange> ranges) {
 		
+		if (suppliedExecutor != null) {
+			executor = suppliedExecutor;
+		}
+		else if (parallelism != MODEL_DEFAULT_PARALLELISM) {
+			executor = new ForkJoinPool(parallelism);
+		}
+		
 		firstPromise = new CompletableFuture<Long>();
 		lastPromise = firstPromise;
 
 		for (LongRange nextRange : ranges) {
 		
 			CompletableFuture<Long> nextPromise = CompletableFuture.supplyAsync(
-					() -> Util.countPrimesForOneRange(nextRange).get());
+					() -> Util.reduceOneRange(nextRange, workload).get(), executor);
 			
 			// Create one big chain of promises to sum the results.
-			lastPromise = lastPromise.thenCombine(nextPromise, (first, second) -> first + second);
+			lastPromise = lastPromise.thenCombine(nextPromise, workload::reduce);
 		}
 	}
 
 	@Override
 	public long countPrimes() throws CountingException {
 		// First first prime counter and the rest will follow.
-		firstPromise.complete(0L);
+		firstPromise.complete(workload.getIdentity());
 		
 		return Util.uncheckedGet(lastPromise);
 	}
+
+	@Override
+	public void tearDown() {
+		if (executor != ForkJoinPool.commonPool() && suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,271 @@
+package ca.thoughtflow.concurrency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of finished ranges and their results. Each record is 32 bytes: start, end, result and a checksum of the three.
+ * Records are buffered and a background thread writes then forces them to disk at every flush interval, so a crash loses at most one interval of work.
+ * A failed background flush is not retried: it breaks the journal and every later append, and the close, throw it.
+ * A torn or corrupt record at the end of the journal (from a crash during a write) ends the replay and is truncated.
+ * The header holds the workload name so a journal is never resumed with another workload.
+ *
+ * @author Nick Maiorano
+ */
+public class RangeJournal implements AutoCloseable {
+
+	private static final int MAGIC = 0x52414E47;
+	private static final int RECORD_SIZE = 4 * Long.BYTES;
+	private static final int BUFFER_RECORDS = 1024;
+
+	private final FileChannel channel;
+	private final Map<String, Long> finishedRanges = new HashMap<>();
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+	private final ScheduledExecutorService flusher;
+	private final Object writeLock = new Object();
+	private volatile RuntimeException flushFailure;
+	private long recordCount;
+	private long flushCount;
+	private long flushNanos;
+
+	/**
+	 * Opens the journal and replays the ranges it already holds.
+	 *
+	 * @param file The journal file, created if missing.
+	 * @param workload The workload whose results are journaled.
+	 * @param flushIntervalMillis The time between forced writes to disk. Zero forces every record.
+	 * @throws UncheckedIOException Thrown if the journal could not be opened or belongs to another workload.
+	 */
+	public RangeJournal(Path file, Workload workload, long flushIntervalMillis) throws UncheckedIOException {
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			byte[] workloadName = workload.toString().getBytes(StandardCharsets.UTF_8);
+			ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + workloadName.length);
+
+			if (channel.size() == 0) {
+				header.putInt(MAGIC).putInt(workloadName.length).put(workloadName).flip();
+				channel.write(header, 0);
+				channel.force(true);
+			}
+			else {
+				ByteBuffer expectedHeader = ByteBuffer.allocate(header.capacity()).putInt(MAGIC).putInt(workloadName.length).put(workloadName).flip();
+				channel.read(header, 0);
+				if (!header.flip().equals(expectedHeader)) {
+					throw new IOException("Not a journal of workload " + workload);
+				}
+			}
+
+			long endOfRecords = replay(header.capacity());
+			channel.truncate(endOfRecords);
+			channel.position(endOfRecords);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not open journal " + file + ": " + e.getMessage(), e);
+		}
+
+		if (flushIntervalMillis > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "journal-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flushInBackground, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+		else {
+			flusher = null;
+		}
+	}
+
+	private static String getKey(long start, long end) {
+		return start + ":" + end;
+	}
+
+	private static long getChecksum(long start, long end, long result) {
+		return ((start * 31 + end) * 31 + result) ^ 0x9E3779B97F4A7C15L;
+	}
+
+	private long replay(long position) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		long nextPosition = position;
+
+		while (channel.read(record.clear(), nextPosition) == RECORD_SIZE) {
+			record.flip();
+			long start = record.getLong();
+			long end = record.getLong();
+			long result = record.getLong();
+			if (record.getLong() != getChecksum(start, end, result)) {
+				break;
+			}
+			finishedRanges.put(getKey(start, end), result);
+			nextPosition += RECORD_SIZE;
+		}
+
+		return nextPosition;
+	}
+
+	/**
+	 * Returns the result of the range if it was journaled, by this run or by an earlier one.
+	 *
+	 * @param range The range.
+	 * @return The result of the range or null if the range is not finished.
+	 */
+	public synchronized Long getResult(LongRange range) {
+		return finishedRanges.get(getKey(range.getStart(), range.getEnd()));
+	}
+
+	/**
+	 * Appends the result of a finished range. The record is durable after the next flush.
+	 *
+	 * @param range The finished range.
+	 * @param result The result of the range.
+	 * @throws UncheckedIOException Thrown if the journal could not be written, now or by an earlier background flush.
+	 */
+	public void append(LongRange range, long result) throws UncheckedIOException {
+		throwFlushFailure();
+
+		boolean isAppended = false;
+		boolean isBufferFull = false;
+
+		while (!isAppended) {
+			synchronized (this) {
+				if (buffer.hasRemaining()) {
+					buffer.putLong(range.getStart()).putLong(range.getEnd()).putLong(result).putLong(getChecksum(range.getStart(), range.getEnd(), result));
+					finishedRanges.put(getKey(range.getStart(), range.getEnd()), result);
+					++recordCount;
+					isBufferFull = !buffer.hasRemaining();
+					isAppended = true;
+				}
+			}
+
+			// Another thread filled the buffer and has yet to write it.
+			if (!isAppended) {
+				flush();
+			}
+		}
+
+		// Without a flusher every record is forced. A full buffer is written right away rather than wait for the flusher.
+		if (flusher == null || isBufferFull) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered records, if any, and forces them to disk. Appends are not blocked while the records are forced.
+	 *
+	 * @throws UncheckedIOException Thrown if the journal could not be written.
+	 */
+	public void flush() throws UncheckedIOException {
+		ByteBuffer records;
+
+		synchronized (this) {
+			buffer.flip();
+			records = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+			buffer.clear();
+		}
+
+		if (records.hasRemaining()) {
+			synchronized (writeLock) {
+				long startTime = System.nanoTime();
+
+				try {
+					while (records.hasRemaining()) {
+						channel.write(records);
+					}
+					channel.force(false);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException("Could not write journal", e);
+				}
+
+				synchronized (this) {
+					flushNanos += System.nanoTime() - startTime;
+					++flushCount;
+				}
+			}
+		}
+	}
+
+	private void flushInBackground() {
+		// An exception would cancel every later run of the flusher without a trace. It is kept and thrown to the next caller instead.
+		try {
+			flush();
+		}
+		catch (RuntimeException e) {
+			flushFailure = e;
+		}
+	}
+
+	private void throwFlushFailure() throws UncheckedIOException {
+		RuntimeException failure = flushFailure;
+
+		if (failure != null) {
+			throw new UncheckedIOException(new IOException("Background flush of the journal failed: records may be lost", failure));
+		}
+	}
+
+	@Override
+	public void close() throws UncheckedIOException {
+		try {
+			if (flusher != null) {
+				flusher.shutdown();
+				flusher.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			try {
+				flush();
+			}
+			finally {
+				channel.close();
+			}
+			throwFlushFailure();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("Interrupted while closing journal", e));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not close journal", e);
+		}
+	}
+
+	/**
+	 * Returns the number of records appended since the journal was opened.
+	 *
+	 * @return The number of records.
+	 */
+	public synchronized long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the number of forced writes since the journal was opened.
+	 *
+	 * @return The number of flushes.
+	 */
+	public synchronized long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * Returns the time spent writing and forcing records since the journal was opened.
+	 *
+	 * @return The flush time in nanoseconds.
+	 */
+	public synchronized long getFlushNanos() {
+		return flushNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Journal records: %d. Flushes: %d (%.1f ms)", recordCount, flushCount, flushNanos / 1e6);
+	}
+}
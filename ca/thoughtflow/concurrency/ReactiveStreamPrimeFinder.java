@@ -6,10 +6,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscription;
-import java.util.concurrent.Future;
 import java.util.concurrent.SubmissionPublisher;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -20,7 +18,8 @@ import java.util.stream.IntStream;
  * these types of communications. Used for demonstrative purposes only.
  * 
  * Creates a subscriber per publisher the reactive streams support multiple subscribers in which case each message is multicasted to all.
- * Round-robin each range to one of four publishers.
+ * Round-robin each range to one publisher per core. When the parallelism is set, there is one publisher per thread and each subscriber counts on a single thread.
+ * When the executor is set, publishers deliver and subscribers count on it.
  * 
  * @author Nick Maiorano
  */
@@ -29,34 +28,65 @@ public class ReactiveStreamPrimeFinder implements PrimeCounter {
 	private List<LongRange> ranges;
 	private List<ReactiveWorker> workers;
 	List<SubmissionPublisher<LongRange>> publishers = new LinkedList<>();
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private int publisherCount;
+	private ExecutorService suppliedExecutor;
+	private Workload workload = Workload.PRIMES;
+	
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+	
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+	
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 	
 	@Override
 	public void setup(List<LongRange> ranges) {
 		this.ranges = ranges;
-		workers = IntStream.range(0, getDefaultParallelism()).mapToObj(i -> new ReactiveWorker()).collect(Collectors.toList());
-		publishers = IntStream.range(0, getDefaultParallelism()).mapToObj(i -> new SubmissionPublisher<LongRange>()).collect(Collectors.toList());
-		IntStream.range(0, getDefaultParallelism()).forEach(i -> publishers.get(i).subscribe(workers.get(i))); 
+		publisherCount = parallelism == MODEL_DEFAULT_PARALLELISM ? getDefaultParallelism() : parallelism;
+		int threadsPerWorker = parallelism == MODEL_DEFAULT_PARALLELISM ? MODEL_DEFAULT_PARALLELISM : 1;
+		workers = IntStream.range(0, publisherCount).mapToObj(i -> suppliedExecutor != null ? new ReactiveWorker(suppliedExecutor, false, workload) : 
+			new ReactiveWorker(Util.newCachedThreadPool(threadsPerWorker), true, workload)).collect(Collectors.toList());
+		publishers = IntStream.range(0, publisherCount).mapToObj(i -> suppliedExecutor != null ? new SubmissionPublisher<LongRange>(suppliedExecutor, Flow.defaultBufferSize()) : 
+			new SubmissionPublisher<LongRange>()).collect(Collectors.toList());
+		IntStream.range(0, publisherCount).forEach(i -> publishers.get(i).subscribe(workers.get(i))); 
 	}
 
 	@Override
 	public long countPrimes() throws CountingException {
 		// Round-robin each range to one publisher queue.
-		IntStream.range(0, ranges.size()).forEach(i -> publishers.get(i % getDefaultParallelism()).submit(ranges.get(i)));
+		IntStream.range(0, ranges.size()).forEach(i -> publishers.get(i % publisherCount).submit(ranges.get(i)));
 				
 		// Close each publisher queue
-		IntStream.range(0, getDefaultParallelism()).forEach(i -> publishers.get(i).close());
+		IntStream.range(0, publisherCount).forEach(i -> publishers.get(i).close());
 		
 		// Sum the results of each queue.
-		return workers.stream().mapToLong(o -> o.getCount()).sum();
+		return workers.stream().mapToLong(o -> o.getCount()).reduce(workload.getIdentity(), workload::reduce);
 	}
 	
 	private static class ReactiveWorker implements Flow.Subscriber<LongRange> {
 
 		private final CompletableFuture<Long> finalCount = new CompletableFuture<>();
-		private final ExecutorService cachedThreadPool = Executors.newCachedThreadPool();
-		private final List<Future<Long>> futures = new LinkedList<>();
+		private final ExecutorService cachedThreadPool;
+		private final boolean ownsThreadPool;
+		private final Workload workload;
+		private final List<CompletableFuture<Long>> futures = new LinkedList<>();
 		private Subscription subscription;
 		
+		public ReactiveWorker(ExecutorService cachedThreadPool, boolean ownsThreadPool, Workload workload) {
+			this.cachedThreadPool = cachedThreadPool;
+			this.ownsThreadPool = ownsThreadPool;
+			this.workload = workload;
+		}
+		
 		@Override
 		public void onSubscribe(Subscription subscription) {
 			this.subscription = subscription;
@@ -67,8 +97,19 @@ public class ReactiveStreamPrimeFinder implements PrimeCounter {
 		
 		@Override
 		public void onComplete() {
-			finalCount.complete(futures.stream().mapToLong(f -> Util.uncheckedGet(f)).sum());
-			cachedThreadPool.shutdown();
+			// Sum without blocking since this may run on the same executor as the counting.
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, exception) -> {
+				if (exception != null) {
+					finalCount.completeExceptionally(exception);
+				}
+				else {
+					finalCount.complete(futures.stream().mapToLong(CompletableFuture::join).reduce(workload.getIdentity(), workload::reduce));
+				}
+			});
+			
+			if (ownsThreadPool) {
+				cachedThreadPool.shutdown();
+			}
 		}
 
 		@Override
@@ -79,7 +120,7 @@ public class ReactiveStreamPrimeFinder implements PrimeCounter {
 		@Override
 		public void onNext(LongRange nextRange) {
 			// To avoid blocking, fire this off as soon as possible.
-			futures.add(cachedThreadPool.submit(() -> Util.countPrimesForOneRange(nextRange).get()));
+			futures.add(CompletableFuture.supplyAsync(() -> Util.reduceOneRange(nextRange, workload).get(), cachedThreadPool));
 			
 			// Subscriber must communicate that it's ready to receive more requests.			
 			subscription.request(1);
@@ -0,0 +1,160 @@
+package ca.thoughtflow.concurrency;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the resources used by the JVM between start and stop: process CPU time, bytes allocated on the heap, garbage collections and the
+ * peak number of live threads. Nothing is sampled, so threads that start and die within the window are fully counted and no thread of the
+ * meter competes with the measured work.
+ * CPU time is the process CPU time: it includes the JIT and the garbage collector and has the resolution of the operating system's
+ * accounting (10 ms ticks on some kernels), so short windows should be averaged over several rounds.
+ * Allocations are the growth of the heap plus what the collections in the window freed, accurate to about one thread-local allocation buffer.
+ *
+ * @author Nick Maiorano
+ */
+public class ResourceMeter {
+
+	private static final long GC_NOTIFICATION_WAIT_MILLIS = 100;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+	private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+	private final AtomicLong collectedBytes = new AtomicLong();
+	private final AtomicLong notifiedGcCount = new AtomicLong();
+	private final NotificationListener gcListener = this::onGarbageCollection;
+	private final List<NotificationEmitter> gcEmitters;
+	private final long startCpuTime;
+	private final long startHeapUsed;
+	private final long startGcCount;
+	private final long startGcTime;
+
+	private ResourceMeter() {
+		threadBean.resetPeakThreadCount();
+		gcEmitters = gcBeans.stream().filter(next -> next instanceof NotificationEmitter).map(next -> (NotificationEmitter) next).collect(Collectors.toList());
+		gcEmitters.stream().forEach(next -> next.addNotificationListener(gcListener, null, null));
+		startGcCount = getGcCount();
+		startGcTime = gcBeans.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+		startHeapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+		startCpuTime = getProcessCpuTime();
+	}
+
+	/**
+	 * Starts measuring.
+	 *
+	 * @return The meter to stop once the measured work is done.
+	 */
+	public static ResourceMeter start() {
+		return new ResourceMeter();
+	}
+
+	/**
+	 * Stops measuring and returns what was used since start. Values that the JVM cannot measure are -1.
+	 *
+	 * @return The resources used.
+	 */
+	public ResourceUsage stop() {
+		long cpuTime = getProcessCpuTime();
+		long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+		long gcCount = getGcCount() - startGcCount;
+
+		// Notifications are delivered by another thread: wait a little for those of the collections in the window.
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GC_NOTIFICATION_WAIT_MILLIS);
+		while (notifiedGcCount.get() < gcCount && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+		gcEmitters.stream().forEach(next -> {
+			try {
+				next.removeNotificationListener(gcListener);
+			} catch (javax.management.ListenerNotFoundException e) {
+				// Already removed.
+			}
+		});
+
+		long allocatedBytes = gcEmitters.isEmpty() || notifiedGcCount.get() < gcCount ? -1 : Math.max(heapUsed - startHeapUsed + collectedBytes.get(), 0);
+
+		return new ResourceUsage(cpuTime < 0 || startCpuTime < 0 ? -1 : cpuTime - startCpuTime, allocatedBytes, gcCount,
+				gcBeans.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum() - startGcTime, threadBean.getPeakThreadCount());
+	}
+
+	private long getGcCount() {
+		return gcBeans.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+	}
+
+	private void onGarbageCollection(Notification notification, Object handback) {
+		if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+			long usedBefore = info.getGcInfo().getMemoryUsageBeforeGc().values().stream().mapToLong(next -> next.getUsed()).sum();
+			long usedAfter = info.getGcInfo().getMemoryUsageAfterGc().values().stream().mapToLong(next -> next.getUsed()).sum();
+
+			collectedBytes.addAndGet(usedBefore - usedAfter);
+			notifiedGcCount.incrementAndGet();
+		}
+	}
+
+	private static long getProcessCpuTime() {
+		java.lang.management.OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+
+		return osBean instanceof com.sun.management.OperatingSystemMXBean ? ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime() : -1;
+	}
+
+	/**
+	 * Resources used between start and stop.
+	 */
+	public static class ResourceUsage {
+
+		private final long cpuNanos;
+		private final long allocatedBytes;
+		private final long gcCount;
+		private final long gcMillis;
+		private final int peakThreads;
+
+		public ResourceUsage(long cpuNanos, long allocatedBytes, long gcCount, long gcMillis, int peakThreads) {
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+			this.peakThreads = peakThreads;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		public long getGcMillis() {
+			return gcMillis;
+		}
+
+		public int getPeakThreads() {
+			return peakThreads;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("CPU: %s ms. Allocated: %s MB. GC: %d (%d ms). Peak threads: %d",
+					cpuNanos < 0 ? "n/a" : String.format("%.1f", cpuNanos / 1e6), allocatedBytes < 0 ? "n/a" : String.format("%.1f", allocatedBytes / 1e6),
+					gcCount, gcMillis, peakThreads);
+		}
+	}
+}
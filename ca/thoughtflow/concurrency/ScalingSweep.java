@@ -0,0 +1,160 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs each prime counter at 1, 2, 4... up to the maximum number of worker threads and reports how the model scales.
+ * Speedup and efficiency are relative to the same model on one thread. The serial fraction of each row is the Karp-Flatt metric and the
+ * overall serial fraction is the least-squares fit of Amdahl's law to all rows.
+ * Each counter is warmed up on every thread count until its timings are stable, and each round runs the thread counts in a random order.
+ * Counters that ignore the thread count are skipped since all of their rows would be the same configuration.
+ *
+ * @author Nick Maiorano
+ */
+public class ScalingSweep {
+
+	/**
+	 * Maximum relative difference between two successive warm-up cycles for the timings to be taken as stable.
+	 */
+	public static final double STABLE_TOLERANCE = 0.05;
+
+	/**
+	 * Maximum number of warm-up cycles through the thread counts.
+	 */
+	public static final int MAX_WARMUP_CYCLES = 10;
+
+	private ScalingSweep() {
+	}
+
+	/**
+	 * Returns the thread counts to sweep: powers of two below the maximum followed by the maximum itself.
+	 *
+	 * @param maxThreads The maximum number of worker threads.
+	 * @return The list of thread counts.
+	 */
+	static List<Integer> getThreadCounts(int maxThreads) {
+		List<Integer> threadCounts = new LinkedList<>();
+
+		for (int threads = 1; threads < maxThreads; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(Math.max(maxThreads, 1));
+
+		return threadCounts;
+	}
+
+	private static double time(String primeCounterClassName, int threads, List<LongRange> ranges, Workload workload) {
+		PrimeCounter counter = Benchmark.getPrimeCounters(List.of(primeCounterClassName), workload).get(0);
+		counter.setParallelism(threads);
+		Benchmark.Result result = Benchmark.timeExecution(counter, ranges);
+
+		if (result.getException() != null) {
+			System.err.println(result);
+		}
+
+		return result.getException() == null ? result.getDurationNanos() / 1e6 : Double.NaN;
+	}
+
+	private static double timeCycle(String primeCounterClassName, List<Integer> threadCounts, List<LongRange> ranges, Workload workload) {
+		return threadCounts.stream().mapToDouble(threads -> time(primeCounterClassName, threads, ranges, workload)).sum();
+	}
+
+	/**
+	 * Runs every thread count in turn until two successive cycles agree within STABLE_TOLERANCE, so that class loading and the JIT are
+	 * paid before any measurement and every thread count is compiled for, not only the first.
+	 */
+	private static void warmUp(String primeCounterClassName, List<Integer> threadCounts, List<LongRange> ranges, Workload workload) {
+		double previous = timeCycle(primeCounterClassName, threadCounts, ranges, workload);
+		boolean isStable = false;
+
+		for (int cycle = 1; cycle < MAX_WARMUP_CYCLES && !isStable; ++cycle) {
+			double current = timeCycle(primeCounterClassName, threadCounts, ranges, workload);
+			isStable = Math.abs(current - previous) <= STABLE_TOLERANCE * previous;
+			previous = current;
+		}
+
+		if (!isStable) {
+			System.err.println("Timings of " + primeCounterClassName + " did not stabilise after " + MAX_WARMUP_CYCLES + " warm-up cycles");
+		}
+	}
+
+	private static boolean isParallelismSupported(String primeCounterClassName) {
+		boolean isSupported;
+
+		try {
+			isSupported = Class.forName(primeCounterClassName).getMethod("setParallelism", int.class).getDeclaringClass() != PrimeCounter.class;
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			isSupported = false;
+		}
+
+		return isSupported;
+	}
+
+	/**
+	 * Sweeps the thread counts for each prime counter and prints one table per counter.
+	 *
+	 * @param rounds The number of rounds averaged for each thread count.
+	 * @param primeCounterClassNames The prime counters to sweep.
+	 * @param ranges The ranges to count.
+	 * @param maxThreads The maximum number of worker threads.
+	 * @param workload The workload applied to the ranges.
+	 */
+	public static void execute(int rounds, List<String> primeCounterClassNames, List<LongRange> ranges, int maxThreads, Workload workload) {
+
+		List<Integer> threadCounts = getThreadCounts(maxThreads);
+		System.out.println("Thread counts: " + threadCounts);
+		Random random = new Random();
+
+		// Counters that ignore the thread count or cannot apply the workload are reported and skipped.
+		primeCounterClassNames.stream().filter(next -> !isParallelismSupported(next)).forEach(next -> System.err.println("Skipping " + next + ": it ignores the thread count"));
+
+		primeCounterClassNames.stream().filter(next -> isParallelismSupported(next) && !Benchmark.getPrimeCounters(List.of(next), workload).isEmpty()).forEach(nextClassName -> {
+			warmUp(nextClassName, threadCounts, ranges, workload);
+
+			// Each round runs the thread counts in a new random order so that drift over the sweep doesn't favour any of them.
+			List<Integer> order = new ArrayList<>(threadCounts);
+			Map<Integer, List<Double>> roundDurations = new HashMap<>();
+			for (int round = 0; round < rounds; ++round) {
+				Collections.shuffle(order, random);
+				order.stream().forEach(threads -> roundDurations.computeIfAbsent(threads, k -> new ArrayList<>()).add(time(nextClassName, threads, ranges, workload)));
+			}
+			List<Double> durations = threadCounts.stream().map(threads -> roundDurations.get(threads).stream().filter(next -> !next.isNaN()).
+					mapToDouble(Double::doubleValue).average().orElse(Double.NaN)).collect(Collectors.toList());
+			double singleThreadDuration = durations.get(0);
+
+			System.out.println("=========");
+			System.out.println("Scaling of " + nextClassName + " (" + workload + ")");
+			System.out.println(String.format("%8s %12s %8s %11s %16s", "Threads", "Duration", "Speedup", "Efficiency", "Serial fraction"));
+
+			// Least-squares fit of T(p) / T(1) = f + (1 - f) / p, solved for the serial fraction f.
+			double sumXY = 0;
+			double sumXX = 0;
+			for (int index = 0; index < threadCounts.size(); ++index) {
+				int threads = threadCounts.get(index);
+				double speedup = singleThreadDuration / durations.get(index);
+				double efficiency = speedup / threads;
+				String serialFraction = threads > 1 ? String.format("%.3f", (1 / speedup - 1d / threads) / (1 - 1d / threads)) : "-";
+
+				System.out.println(String.format("%8d %12.1f %8.2f %11.2f %16s", threads, durations.get(index), speedup, efficiency, serialFraction));
+
+				double x = 1 - 1d / threads;
+				sumXY += x * (1 / speedup - 1d / threads);
+				sumXX += x * x;
+			}
+
+			if (sumXX > 0) {
+				double serialFraction = Math.min(Math.max(sumXY / sumXX, 0), 1);
+				System.out.println(String.format("Amdahl serial fraction estimate: %.3f (maximum speedup %s)", serialFraction,
+						serialFraction > 0 ? String.format("%.1f", 1 / serialFraction) : "unbounded"));
+			}
+		});
+	}
+}
@@ -10,7 +10,13 @@ import java.util.List;
 public class SingleThreadedPrimeCounter implements PrimeCounter {
 
 	private List<LongRange> ranges;
+	private Workload workload = Workload.PRIMES;
 	
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
+
 	@Override
 	public void setup(List<LongRange> ranges) {
 		this.ranges = ranges;
@@ -18,6 +24,6 @@ public class SingleThreadedPrimeCounter implements PrimeCounter {
 
 	@Override
 	public long countPrimes() {
-		return Util.countPrimesForRange(ranges).get();
+		return Util.reduceRanges(ranges, workload).get();
 	}
 }
@@ -1,18 +1,14 @@
 package ca.thoughtflow.concurrency;
 
-import static ca.thoughtflow.concurrency.Util.isPrime;
-
 import java.util.List;
 import java.util.Spliterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 
 /**
  * This model builds upon the cached thread pool and uses spliterators to distribute the workload.
@@ -21,18 +17,37 @@ import java.util.stream.LongStream;
  */
 public class SpliteratorPrimeCounter implements PrimeCounter {
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private ExecutorService executor;
+	private ExecutorService suppliedExecutor;
 	private List<Callable<Long>> callables;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
 
 	@Override
 	public void setup(List<LongRange> ranges) {
+		executor = suppliedExecutor != null ? suppliedExecutor : Util.newCachedThreadPool(parallelism);
 
 		// Currying function that a spliterator and returns a callable function.
 		Function<Spliterator<Long>, Callable<Long>> function = 
 			spliterator -> () ->
 				{
-					AtomicLong count = new AtomicLong();
-					Consumer<Long> consumer = l -> count.addAndGet(isPrime(l) ? 1 : 0);
+					AtomicLong count = new AtomicLong(workload.getIdentity());
+					Consumer<Long> consumer = l -> count.accumulateAndGet(workload.map(l), workload::reduce);
 					spliterator.forEachRemaining(consumer);
 
 					return count.get();
@@ -43,7 +58,7 @@ public class SpliteratorPrimeCounter implements PrimeCounter {
 		// Outer stream		
 		callables = ranges.stream().map(
 				// Inner stream
-				nextRange -> LongStream.range(nextRange.getStart(), nextRange.getEnd()).spliterator()).
+				nextRange -> workload.elements(nextRange.getStart(), nextRange.getEnd()).spliterator()).
 			// Outer stream
 			map(nextSpliterator -> function.apply(nextSpliterator)).collect(Collectors.toList());
 	}
@@ -58,11 +73,13 @@ public class SpliteratorPrimeCounter implements PrimeCounter {
 			throw new CountingException("Could not find primes", e);
 		}
 		
-		return futures.stream().mapToLong(nextFuture -> Util.uncheckedGet(nextFuture)).sum();
+		return futures.stream().mapToLong(nextFuture -> Util.uncheckedGet(nextFuture)).reduce(workload.getIdentity(), workload::reduce);
 	}
 
 	@Override
 	public void tearDown() {
-		executor.shutdownNow();
+		if (suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Builds upon the promise prime counter but combines the results with a balanced tree of promises instead of one long chain.
+ * The tree is log(ranges) combines deep, so combining and completion no longer run serially down thousands of stages.
+ * Unlike the promise prime counter, no counting starts in setup: every promise waits on a trigger completed by countPrimes.
+ * Promises run on the common pool unless the parallelism or the executor is set, in which case they run on that dedicated pool.
+ *
+ * @author Nick Maiorano
+ */
+public class TreePromisePrimeCounter implements PrimeCounter {
+
+	private CompletableFuture<Void> trigger;
+	private CompletableFuture<Long> rootPromise;
+	private ExecutorService executor = ForkJoinPool.commonPool();
+	private ExecutorService suppliedExecutor;
+	private int parallelism = MODEL_DEFAULT_PARALLELISM;
+	private Workload workload = Workload.PRIMES;
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setExecutor(ExecutorService executor) {
+		suppliedExecutor = executor;
+	}
+
+	@Override
+	public void setWorkload(Workload workload) {
+		this.workload = workload;
+	}
+
+	@Override
+	public void setup(List<LongRange> ranges) {
+
+		if (suppliedExecutor != null) {
+			executor = suppliedExecutor;
+		}
+		else if (parallelism != MODEL_DEFAULT_PARALLELISM) {
+			executor = new ForkJoinPool(parallelism);
+		}
+
+		trigger = new CompletableFuture<>();
+
+		// One leaf promise per range, all waiting on the trigger.
+		List<CompletableFuture<Long>> leafPromises = ranges.stream().map(nextRange ->
+			trigger.thenApplyAsync(ignored -> Util.reduceOneRange(nextRange, workload).get(), executor)).collect(Collectors.toList());
+
+		rootPromise = leafPromises.isEmpty() ? trigger.thenApply(ignored -> workload.getIdentity()) : combine(leafPromises, 0, leafPromises.size());
+	}
+
+	private CompletableFuture<Long> combine(List<CompletableFuture<Long>> promises, int start, int end) {
+		CompletableFuture<Long> promise;
+
+		if (end - start == 1) {
+			promise = promises.get(start);
+		}
+		else {
+			int middle = (start + end) >>> 1;
+			promise = combine(promises, start, middle).thenCombine(combine(promises, middle, end), workload::reduce);
+		}
+
+		return promise;
+	}
+
+	@Override
+	public long countPrimes() throws CountingException {
+		// Release all of the leaf promises at once.
+		trigger.complete(null);
+
+		return Util.uncheckedGet(rootPromise);
+	}
+
+	@Override
+	public void tearDown() {
+		if (executor != ForkJoinPool.commonPool() && suppliedExecutor == null) {
+			executor.shutdownNow();
+		}
+	}
+}
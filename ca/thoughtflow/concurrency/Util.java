@@ -1,10 +1,20 @@
 package ca.thoughtflow.concurrency;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * This utility class provides the common prime functions so that they can be shared by all prime counters. This reduces the code they need and can focus solely on the
@@ -45,6 +55,62 @@ public interface Util {
 		return Runtime.getRuntime().availableProcessors();
 	}
 	
+	/**
+	 * Creates a cached thread pool that never grows beyond the given parallelism. Idle threads time out as they do in an unbounded cached pool.
+	 * 
+	 * @param parallelism The maximum number of threads or PrimeCounter.MODEL_DEFAULT_PARALLELISM for an unbounded pool.
+	 * @return The new executor service.
+	 */
+	static ExecutorService newCachedThreadPool(int parallelism) {
+		ExecutorService executor;
+		
+		if (parallelism == PrimeCounter.MODEL_DEFAULT_PARALLELISM) {
+			executor = Executors.newCachedThreadPool();
+		}
+		else {
+			ThreadPoolExecutor boundedExecutor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+			boundedExecutor.allowCoreThreadTimeOut(true);
+			executor = boundedExecutor;
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Checks that the executor supplied to a fork/join based model is a fork/join pool.
+	 * 
+	 * @param executor The supplied executor.
+	 * @return The executor as a fork/join pool.
+	 * @throws IllegalArgumentException Thrown if the executor is not a fork/join pool.
+	 */
+	static ForkJoinPool requireForkJoinPool(ExecutorService executor) throws IllegalArgumentException {
+		if (!(executor instanceof ForkJoinPool)) {
+			throw new IllegalArgumentException("Fork/join models require a ForkJoinPool but got " + executor);
+		}
+		
+		return (ForkJoinPool) executor;
+	}
+	
+	/**
+	 * Distributes the items round-robin into at most the given number of groups. Used by models that assign several ranges to one thread.
+	 * 
+	 * @param items The items to distribute.
+	 * @param groups The maximum number of groups.
+	 * @return The list of non-empty groups.
+	 */
+	static <T> List<List<T>> distribute(List<T> items, int groups) {
+		int groupCount = Math.min(groups, items.size());
+		List<List<T>> distributedItems = IntStream.range(0, groupCount).mapToObj(group -> (List<T>) new ArrayList<T>()).collect(Collectors.toList());
+		int index = 0;
+		
+		// One pass over the items (which may be a linked list) rather than one per group.
+		for (T nextItem : items) {
+			distributedItems.get(index++ % groupCount).add(nextItem);
+		}
+		
+		return distributedItems;
+	}
+	
 	/**
 	 * Counts the number of primes for the given list of ranges.
 	 * 
@@ -52,7 +118,7 @@ public interface Util {
 	 * @return The count of primes wrapped in a Supplier function.
 	 */
 	static Supplier<Long> countPrimesForRange(List<LongRange> ranges) {
-		return () -> ranges.stream().map(Util::countPrimesForOneRange).mapToLong(s -> (long) s.get()).sum();
+		return reduceRanges(ranges, Workload.PRIMES);
 	}
 	
 	/**
@@ -62,7 +128,52 @@ public interface Util {
 	 * @return The count of primes wrapped in a Supplier function.
 	 */
 	static Supplier<Long> countPrimesForOneRange(LongRange range) {
-		return () -> LongStream.range(range.getStart(), range.getEnd()).filter(Util::isPrime).count();
+		return reduceOneRange(range, Workload.PRIMES);
+	}
+	
+	/**
+	 * Applies the workload to the given list of ranges.
+	 * 
+	 * @param ranges The list of ranges to reduce.
+	 * @param workload The workload to apply.
+	 * @return The reduced value wrapped in a Supplier function.
+	 */
+	static Supplier<Long> reduceRanges(List<LongRange> ranges, Workload workload) {
+		return () -> ranges.stream().map(nextRange -> reduceOneRange(nextRange, workload)).mapToLong(s -> (long) s.get()).reduce(workload.getIdentity(), workload::reduce);
+	}
+	
+	/**
+	 * Applies the workload to the given range.
+	 * 
+	 * @param range The range to reduce.
+	 * @param workload The workload to apply.
+	 * @return The reduced value wrapped in a Supplier function.
+	 */
+	static Supplier<Long> reduceOneRange(LongRange range, Workload workload) {
+		return () -> workload.reduceRange(range.getStart(), range.getEnd());
+	}
+	
+	/**
+	 * Returns the numbers of the range that can be prime: 2, 3, 5 and 7 followed by the numbers coprime to all four (mod-210 wheel).
+	 * The stream is sequential and splits evenly when made parallel.
+	 * 
+	 * @param range The range from its start to its end (exclusive).
+	 * @return The prime candidates of the range.
+	 */
+	static LongStream primeCandidates(LongRange range) {
+		return primeCandidates(range.getStart(), range.getEnd());
+	}
+	
+	/**
+	 * Returns the numbers in [start, end) that can be prime: 2, 3, 5 and 7 followed by the numbers coprime to all four (mod-210 wheel).
+	 * The stream is sequential and splits evenly when made parallel.
+	 * 
+	 * @param start The first number of the range.
+	 * @param end The end of the range (exclusive).
+	 * @return The prime candidates of the range.
+	 */
+	static LongStream primeCandidates(long start, long end) {
+		return StreamSupport.longStream(WheelSpliterator.create(start, end), false);
 	}
 
 	/**
@@ -0,0 +1,146 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Spliterator over the prime candidates of a range using a mod-210 wheel. Only the 48 residues coprime to 2, 3, 5 and 7 are produced
+ * (about 23% of the integers) along with 2, 3, 5 and 7 themselves, which the wheel skips.
+ * Candidates (small primes included) are addressed by index, so the spliterator splits exactly in half and reports its exact size for
+ * fork/join and parallel streams.
+ *
+ * @author Nick Maiorano
+ */
+public class WheelSpliterator implements Spliterator.OfLong {
+
+	/**
+	 * The primes that the wheel skips. They come right after 1, the first wheel candidate, at indices 1 to 4.
+	 */
+	private static final long[] WHEEL_PRIMES = {2, 3, 5, 7};
+
+	private static final int WHEEL_SIZE = 210;
+	private static final int[] RESIDUES = IntStream.range(0, WHEEL_SIZE).filter(next -> next % 2 != 0 && next % 3 != 0 && next % 5 != 0 && next % 7 != 0).toArray();
+
+	private long index;
+	private final long endIndex;
+
+	/**
+	 * Creates the spliterator over the candidates in [start, end).
+	 *
+	 * @param start The first number of the range.
+	 * @param end The end of the range (exclusive).
+	 * @return The new spliterator.
+	 */
+	public static WheelSpliterator create(long start, long end) {
+		long startIndex = getIndex(Math.max(start, 0));
+		return new WheelSpliterator(startIndex, Math.max(getIndex(Math.max(end, 0)), startIndex));
+	}
+
+	private WheelSpliterator(long index, long endIndex) {
+		this.index = index;
+		this.endIndex = endIndex;
+	}
+
+	/**
+	 * Returns the index of the first candidate greater or equal to the given value.
+	 */
+	private static long getIndex(long value) {
+		long index;
+
+		if (value <= WHEEL_PRIMES[WHEEL_PRIMES.length - 1]) {
+			index = value <= 1 ? 0 : 1 + Arrays.stream(WHEEL_PRIMES).filter(next -> next < value).count();
+		}
+		else {
+			long turn = value / WHEEL_SIZE;
+			int residue = (int) (value % WHEEL_SIZE);
+			int position = 0;
+
+			while (position < RESIDUES.length && RESIDUES[position] < residue) {
+				++position;
+			}
+
+			index = turn * RESIDUES.length + position + WHEEL_PRIMES.length;
+		}
+
+		return index;
+	}
+
+	private static long getCandidate(long index) {
+		long candidate;
+
+		if (index == 0) {
+			candidate = 1;
+		}
+		else if (index <= WHEEL_PRIMES.length) {
+			candidate = WHEEL_PRIMES[(int) index - 1];
+		}
+		else {
+			long wheelIndex = index - WHEEL_PRIMES.length;
+			candidate = wheelIndex / RESIDUES.length * WHEEL_SIZE + RESIDUES[(int) (wheelIndex % RESIDUES.length)];
+		}
+
+		return candidate;
+	}
+
+	@Override
+	public boolean tryAdvance(LongConsumer action) {
+		boolean advanced = index < endIndex;
+
+		if (advanced) {
+			action.accept(getCandidate(index++));
+		}
+
+		return advanced;
+	}
+
+	@Override
+	public void forEachRemaining(LongConsumer action) {
+		while (index <= WHEEL_PRIMES.length && tryAdvance(action));
+
+		long wheelIndex = index - WHEEL_PRIMES.length;
+		long turn = wheelIndex / RESIDUES.length;
+		int position = (int) (wheelIndex % RESIDUES.length);
+
+		// Walk the wheel incrementally rather than dividing for every candidate.
+		for (long remaining = endIndex - index; remaining > 0; --remaining) {
+			action.accept(turn * WHEEL_SIZE + RESIDUES[position]);
+			if (++position == RESIDUES.length) {
+				position = 0;
+				++turn;
+			}
+		}
+
+		index = endIndex;
+	}
+
+	@Override
+	public Spliterator.OfLong trySplit() {
+		long middleIndex = index + (endIndex - index) / 2;
+		Spliterator.OfLong prefix = null;
+
+		if (middleIndex > index) {
+			prefix = new WheelSpliterator(index, middleIndex);
+			index = middleIndex;
+		}
+
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return endIndex - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+	@Override
+	public Comparator<? super Long> getComparator() {
+		return null;
+	}
+}
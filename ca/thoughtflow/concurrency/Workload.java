@@ -0,0 +1,176 @@
+package ca.thoughtflow.concurrency;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * The work that the concurrency models distribute: each element of a range is mapped to a long and the values are reduced to one.
+ * The reducer must be associative and commutative with the given identity since models combine partial results in any order.
+ * Counting primes is the default workload; twin primes and a synthetic workload of tunable cost per element are also provided.
+ *
+ * @author Nick Maiorano
+ */
+public class Workload {
+
+	/**
+	 * Counts the primes (the original workload of all models).
+	 */
+	public static final Workload PRIMES = countPrimes("primes", Util::isPrime);
+
+	/**
+	 * Counts the primes p for which p + 2 is also prime.
+	 */
+	public static final Workload TWIN_PRIMES = new Workload("twin-primes", Util::primeCandidates,
+			element -> Util.isPrime(element) && Util.isPrime(element + 2) ? 1 : 0, Long::sum, 0);
+
+	private final String name;
+	private final ElementGenerator elements;
+	private final LongUnaryOperator mapper;
+	private final LongBinaryOperator reducer;
+	private final long identity;
+
+	/**
+	 * Generates the elements of a range that the mapper is applied to.
+	 */
+	@FunctionalInterface
+	public interface ElementGenerator {
+
+		/**
+		 * @param start The first number of the range.
+		 * @param end The end of the range (exclusive).
+		 * @return The elements of the range.
+		 */
+		LongStream of(long start, long end);
+	}
+
+	private Workload(String name, ElementGenerator elements, LongUnaryOperator mapper, LongBinaryOperator reducer, long identity) {
+		this.name = name;
+		this.elements = elements;
+		this.mapper = mapper;
+		this.reducer = reducer;
+		this.identity = identity;
+	}
+
+	/**
+	 * Creates a workload that maps every number of the range and reduces the values.
+	 *
+	 * @param name The name of the workload.
+	 * @param mapper The function applied to each number.
+	 * @param reducer The associative and commutative function combining two values.
+	 * @param identity The identity value of the reducer.
+	 * @return The workload.
+	 */
+	public static Workload create(String name, LongUnaryOperator mapper, LongBinaryOperator reducer, long identity) {
+		return new Workload(name, LongStream::range, mapper, reducer, identity);
+	}
+
+	/**
+	 * Creates a workload that counts the numbers of the range matching the predicate.
+	 *
+	 * @param name The name of the workload.
+	 * @param predicate The predicate tested on each number.
+	 * @return The workload.
+	 */
+	public static Workload count(String name, LongPredicate predicate) {
+		return create(name, element -> predicate.test(element) ? 1 : 0, Long::sum, 0);
+	}
+
+	/**
+	 * Creates a workload that counts primes with the given primality test. Only the wheel candidates of each range are tested.
+	 *
+	 * @param name The name of the workload.
+	 * @param primality The primality test.
+	 * @return The workload.
+	 */
+	public static Workload countPrimes(String name, LongPredicate primality) {
+		return new Workload(name, Util::primeCandidates, element -> primality.test(element) ? 1 : 0, Long::sum, 0);
+	}
+
+	/**
+	 * Creates a synthetic workload: each number is mixed the given number of times and counted if the result is even.
+	 * The cost per element grows linearly with the number of rounds, which sets the task granularity.
+	 *
+	 * @param rounds The number of mixing rounds per element.
+	 * @return The workload.
+	 */
+	public static Workload synthetic(int rounds) {
+		return count("synthetic:" + rounds, element -> {
+			long value = element;
+			for (int round = 0; round < rounds; ++round) {
+				// xorshift64 step
+				value ^= value << 13;
+				value ^= value >>> 7;
+				value ^= value << 17;
+			}
+			return (value & 1) == 0;
+		});
+	}
+
+	/**
+	 * Parses a list of workloads such as "primes", "twin-primes" or "synthetic:10,100,1000" (one synthetic workload per cost), separated by ';'.
+	 *
+	 * @param specification The workloads to parse.
+	 * @return The workloads.
+	 * @throws NumberFormatException Thrown if a workload is unknown or a synthetic cost is not a number.
+	 */
+	public static List<Workload> parse(String specification) throws NumberFormatException {
+		return Arrays.stream(specification.split(";")).flatMap(next -> {
+			if (next.equals(PRIMES.toString())) {
+				return List.of(PRIMES).stream();
+			}
+			else if (next.equals(TWIN_PRIMES.toString())) {
+				return List.of(TWIN_PRIMES).stream();
+			}
+			else if (next.startsWith("synthetic:")) {
+				return Arrays.stream(next.substring("synthetic:".length()).split(",")).map(cost -> synthetic(Integer.parseInt(cost)));
+			}
+			else {
+				throw new NumberFormatException("Unknown workload " + next);
+			}
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the elements of the range that the mapper is applied to.
+	 *
+	 * @param start The first number of the range.
+	 * @param end The end of the range (exclusive).
+	 * @return The elements as a sequential stream.
+	 */
+	public LongStream elements(long start, long end) {
+		return elements.of(start, end);
+	}
+
+	public long map(long element) {
+		return mapper.applyAsLong(element);
+	}
+
+	public long reduce(long left, long right) {
+		return reducer.applyAsLong(left, right);
+	}
+
+	public long getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Maps and reduces all elements of [start, end) on the calling thread.
+	 *
+	 * @param start The first number of the range.
+	 * @param end The end of the range (exclusive).
+	 * @return The reduced value.
+	 */
+	public long reduceRange(long start, long end) {
+		return elements(start, end).map(mapper).reduce(identity, reducer);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}